@@ -32,7 +32,6 @@ import org.openide.util.Lookup;
 import org.openide.util.lookup.ServiceProvider;
 import org.sleuthkit.autopsy.corecomponentinterfaces.DataContentViewer;
 import org.sleuthkit.autopsy.coreutils.StringExtract;
-import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractResult;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
 import org.sleuthkit.autopsy.datamodel.StringContent;
@@ -57,6 +56,8 @@ public class DataContentViewerString extends javax.swing.JPanel implements DataC
     
     //string extract utility
     private final StringExtract stringExtract = new StringExtract();
+    //strings of the pages viewed and prefetched
+    private final StringPageCache pageCache = StringPageCache.getDefault((int) pageLength);
 
     /** Creates new form DataContentViewerString */
     public DataContentViewerString() {
@@ -331,9 +332,12 @@ public class DataContentViewerString extends javax.swing.JPanel implements DataC
             try {
                 this.dataSource = dataSource;
 
-                int bytesRead = 0;
+                String pageText = null;
+                final SCRIPT selScript = (SCRIPT) languageCombo.getSelectedItem();
                 if (!reset && dataSource.getSize() > 0) {
-                    bytesRead = dataSource.read(data, offset, pageLength); // read the data
+                    // read the data and extract the strings, unless cached
+                    pageText = pageCache.getPage(dataSource, selScript, offset, data, stringExtract);
+                    pageCache.prefetch(dataSource, selScript, offset);
                 } 
 
 
@@ -341,12 +345,8 @@ public class DataContentViewerString extends javax.swing.JPanel implements DataC
                 String text = "";
                 Boolean setVisible = false;
 
-                if (bytesRead > 0) {
-                    //text = DataConversion.getString(data, bytesRead, 4);
-                    final SCRIPT selScript = (SCRIPT) languageCombo.getSelectedItem();
-                    stringExtract.setEnabledScript(selScript);
-                    StringExtractResult res = stringExtract.extract(data, bytesRead, 0);
-                    text = res.getText();
+                if (pageText != null) {
+                    text = pageText;
                     if (text.trim().isEmpty()) {
                         text = "(offset " + currentOffset + "-" + (currentOffset + pageLength) 
                                 + " contains no text)";
@@ -0,0 +1,210 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.corecomponents;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskException;
+
+/**
+ * Bounded LRU cache of the strings extracted from pages of content, keyed by
+ * content, script and page offset, so that going back and forth between pages
+ * of the string viewer does not read and extract the pages again. The pages
+ * before and after the page being viewed can be extracted in the background.
+ *
+ * The cache is cleared when the case changes.
+ */
+class StringPageCache {
+
+    private static final Logger logger = Logger.getLogger(StringPageCache.class.getName());
+    //max total chars of the cached pages
+    private static final long MAX_CACHED_CHARS = 4L * 1024 * 1024;
+    private static StringPageCache instance;
+    private final int pageLength;
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true);
+    private long cachedChars = 0;
+    //changes when the cache is cleared, so late prefetches of a closed case are dropped
+    private int epoch = 0;
+    //pages queued or being extracted in the background
+    private final Set<String> pending = new HashSet<String>();
+    //used by the prefetch thread only
+    private final StringExtract prefetchExtract = new StringExtract();
+    private final byte[] prefetchData;
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "String viewer page prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    private StringPageCache(int pageLength) {
+        this.pageLength = pageLength;
+        this.prefetchData = new byte[pageLength];
+    }
+
+    /**
+     * @param pageLength length of the pages in bytes, the same for all
+     * viewers
+     */
+    static synchronized StringPageCache getDefault(int pageLength) {
+        if (instance == null) {
+            instance = new StringPageCache(pageLength);
+            Case.addPropertyChangeListener(new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if (evt.getPropertyName().equals(Case.CASE_CURRENT_CASE)) {
+                        //object ids are only unique within a case
+                        instance.clear();
+                    }
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Drop all cached pages, e.g. when the case changes
+     */
+    synchronized void clear() {
+        cache.clear();
+        pending.clear();
+        cachedChars = 0;
+        ++epoch;
+    }
+
+    /**
+     * Get the strings of the page of the content, from the cache or extracted
+     * from the content
+     *
+     * @param content content to get the strings of
+     * @param script script of the strings
+     * @param offset offset of the page in the content
+     * @param data buffer to read the page into, at least a page long
+     * @param extract string extract utility to use, not used by other threads
+     * @return the strings of the page, empty if the page has no strings, or
+     * null if there is no content at the offset
+     * @throws TskException if the content could not be read
+     */
+    String getPage(Content content, SCRIPT script, long offset, byte[] data, StringExtract extract) throws TskException {
+        final String key = getKey(content, script, offset);
+        final int startEpoch;
+        synchronized (this) {
+            final String cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            startEpoch = epoch;
+        }
+        final String text = extractPage(content, script, offset, data, extract);
+        if (text != null) {
+            put(key, text, startEpoch);
+        }
+        return text;
+    }
+
+    /**
+     * Extract the pages before and after the page in the background, if not
+     * cached yet
+     *
+     * @param content content being viewed
+     * @param script script of the strings
+     * @param offset offset of the page being viewed
+     */
+    void prefetch(final Content content, final SCRIPT script, long offset) {
+        final long[] neighbors = {offset + pageLength, offset - pageLength};
+        for (final long neighbor : neighbors) {
+            if (neighbor < 0 || neighbor >= content.getSize()) {
+                continue;
+            }
+            final String key = getKey(content, script, neighbor);
+            final int startEpoch;
+            synchronized (this) {
+                if (cache.containsKey(key) || !pending.add(key)) {
+                    continue;
+                }
+                startEpoch = epoch;
+            }
+            prefetchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final String text = extractPage(content, script, neighbor, prefetchData, prefetchExtract);
+                        if (text != null) {
+                            put(key, text, startEpoch);
+                        }
+                    } catch (TskException ex) {
+                        logger.log(Level.WARNING, "Could not prefetch strings of content: " + content.getId() + ", offset: " + neighbor, ex);
+                    } finally {
+                        synchronized (StringPageCache.this) {
+                            pending.remove(key);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private String extractPage(Content content, SCRIPT script, long offset, byte[] data, StringExtract extract) throws TskException {
+        final int bytesRead = content.read(data, offset, pageLength);
+        if (bytesRead <= 0) {
+            return null;
+        }
+        extract.setEnabledScript(script);
+        return extract.extract(data, bytesRead, 0).getText();
+    }
+
+    private synchronized void put(String key, String text, int startEpoch) {
+        if (startEpoch != epoch) {
+            //cleared while the page was extracted
+            return;
+        }
+        final String old = cache.put(key, text);
+        if (old != null) {
+            cachedChars -= old.length();
+        }
+        cachedChars += text.length();
+        //evict least recently used pages over the limit
+        Iterator<Map.Entry<String, String>> it = cache.entrySet().iterator();
+        while (cachedChars > MAX_CACHED_CHARS && it.hasNext()) {
+            cachedChars -= it.next().getValue().length();
+            it.remove();
+        }
+    }
+
+    private static String getKey(Content content, SCRIPT script, long offset) {
+        return content.getId() + "_" + script.name() + "_" + offset;
+    }
+}
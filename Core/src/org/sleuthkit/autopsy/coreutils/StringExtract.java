@@ -18,13 +18,9 @@
  */
 package org.sleuthkit.autopsy.coreutils;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Properties;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
@@ -69,6 +65,14 @@ public class StringExtract {
             SCRIPT.GEORGIAN, SCRIPT.HEBREW, SCRIPT.LAO, SCRIPT.MONGOLIAN, SCRIPT.THAI, SCRIPT.TIBETAN);
     //current total string buffer, reuse for performance
     private final StringBuilder curString = new StringBuilder();
+    //script class of every 2 byte char value, for the enabled scripts it was built for
+    private byte[] scriptClasses = null;
+    private List<SCRIPT> scriptClassesScripts = null;
+    private static final byte CLASS_STOP = -1;
+    private static final byte CLASS_GENERIC = 0;
+    //decoded UTF8 char is packed with its length in bytes
+    private static final int UTF8_BYTES_SHIFT = 16;
+    private static final int UTF8_CHAR_MASK = 0xFFFF;
 
     /**
      * Initializes the StringExtract utility Sets enabled scripts to all
@@ -174,6 +178,11 @@ public class StringExtract {
     /**
      * Runs the byte buffer through the string extractor
      *
+     * At every offset, the string in each of the enabled encodings is
+     * measured without decoding it, using a lookup table of the script class
+     * of every character. Only the winning string is decoded into the reused
+     * string buffer, so no objects are allocated per offset.
+     *
      * @param buff
      * @param len
      * @param offset
@@ -184,8 +193,10 @@ public class StringExtract {
         if (this.enableUTF16 == false && this.enableUTF8 == false) {
              return new StringExtractResult();
         }
-        
-        final int buffLen = buff.length;
+
+        //no string can start past the data, even if the buffer is larger
+        final int endOff = Math.min(len, buff.length);
+        final byte[] classes = getScriptClasses();
 
         int processedBytes = 0;
         int curOffset = offset;
@@ -199,45 +210,48 @@ public class StringExtract {
         //(one byte past the last byte processed in by last extraction)
         int firstUnprocessedOff = offset;
 
-        while (curOffset < buffLen) {
+        while (curOffset < endOff) {
             //shortcut, skip processing empty bytes
-            if (buff[curOffset] == 0 && curOffset + 1 < buffLen && buff[curOffset + 1] == 0) {
+            if (buff[curOffset] == 0 && curOffset + 1 < endOff && buff[curOffset + 1] == 0) {
                 curOffset += 2;
                 continue;
             }
 
-            //extract using all methods and see which one wins
+            //measure using all methods and see which one wins
             StringExtractResult resUTF16 = null;
             boolean runUTF16 = false;
             if (enableUTF16 && curOffset % 2 == 0) {
                 runUTF16 = true;
-                extractUTF16(buff, len, curOffset, true, resUTF16En1);
-                extractUTF16(buff, len, curOffset, false, resUTF16En2);
+                scanUTF16(buff, len, curOffset, true, classes, resUTF16En1);
+                scanUTF16(buff, len, curOffset, false, classes, resUTF16En2);
                 resUTF16 = resUTF16En1.numChars > resUTF16En2.numChars ? resUTF16En1 : resUTF16En2;
-            } 
-            
+            }
+
             if (enableUTF8) {
-                extractUTF8(buff, len, curOffset, resUTF8);
+                scanUTF8(buff, len, curOffset, classes, resUTF8);
             }
 
             StringExtractResult resWin = null;
             if (enableUTF8 && enableUTF16) {
                 resWin = runUTF16 && resUTF16.numChars > resUTF8.numChars ? resUTF16 : resUTF8;
-            } else if (enableUTF16){
+            } else if (enableUTF16) {
                 resWin = resUTF16;
-            }
-            else if (enableUTF8) {
+            } else if (enableUTF8) {
                 resWin = resUTF8;
             }
 
-            if (resWin.numChars >= MIN_CHARS_STRING) {
+            if (resWin != null && resWin.numChars >= MIN_CHARS_STRING) {
                 //record string 
                 if (startOffset == offset) {
                     //advance start offset where first string starts it hasn't been advanced
                     startOffset = resWin.offset;
                 }
                 curStringLen += resWin.numChars;
-                curString.append(resWin.textString);
+                if (resWin == resUTF8) {
+                    appendUTF8(buff, curOffset, resWin.numChars);
+                } else {
+                    appendUTF16(buff, curOffset, resWin == resUTF16En1, resWin.numChars);
+                }
                 curString.append("\n");
                 curStringLen += resWin.numChars + 1;
 
@@ -266,277 +280,185 @@ public class StringExtract {
         return res;
     }
 
-    private StringExtractResult extractUTF16(byte[] buff, int len, int offset, boolean endianSwap, final StringExtractResult res) {
-        res.reset();
-        
-        int curOffset = offset;
+    /**
+     * Get the script class of every 2 byte character value for the enabled
+     * scripts: CLASS_STOP for characters that end a string, CLASS_GENERIC for
+     * characters allowed in any script, or the script value. Rebuilt only when
+     * the enabled scripts change.
+     */
+    private byte[] getScriptClasses() {
+        if (scriptClasses != null && enabledScripts.equals(scriptClassesScripts)) {
+            return scriptClasses;
+        }
+        final byte[] classes = new byte[StringExtractUnicodeTable.UNICODE_TABLE_SIZE];
+        for (int i = 0; i < classes.length; ++i) {
+            final SCRIPT script = unicodeTable.getScript(i);
+            if (script == SCRIPT.NONE) {
+                classes[i] = CLASS_STOP;
+            } else if (StringExtractUnicodeTable.isGeneric(script)) {
+                classes[i] = CLASS_GENERIC;
+            } else if (isExtractionEnabled(script)) {
+                classes[i] = (byte) StringExtractUnicodeTable.getScriptValue(script);
+            } else {
+                classes[i] = CLASS_STOP;
+            }
+        }
+        scriptClasses = classes;
+        scriptClassesScripts = new ArrayList<SCRIPT>(enabledScripts);
+        return classes;
+    }
 
-        final StringBuilder tempString = new StringBuilder();
+    /**
+     * Get the character value of the 2 bytes, as the UTF16 extraction always
+     * did, adding the low byte as signed
+     */
+    private static char getUTF16Char(byte hi, byte lo) {
+        return (char) (((hi & 0xFF) << 8) + lo);
+    }
 
-        SCRIPT currentScript = SCRIPT.NONE;
+    /**
+     * Measure the UTF16 string at the offset, without decoding it
+     *
+     * @param bigEndian true to read the high byte first
+     */
+    private static void scanUTF16(byte[] buff, int len, int offset, boolean bigEndian, byte[] classes, final StringExtractResult res) {
+        res.reset();
 
-        boolean inControl = false;
+        int curOffset = offset;
+        //script the string is locked in to, 0 until the first non-generic char
+        int currentScript = 0;
 
         //while we have 2 byte chunks
-        byte[] b = new byte[2];
         while (curOffset < len - 1) {
-            b[0] = buff[curOffset++];
-            b[1] = buff[curOffset++];
-
-            if (endianSwap) {
-                byte temp = b[0];
-                b[0] = b[1];
-                b[1] = temp;
-            }
-
-            //convert the byte sequence to 2 byte char
-            //ByteBuffer bb = ByteBuffer.wrap(b);
-            //int byteVal = bb.getInt();
-            char byteVal = (char) b[1];
-            byteVal = (char) (byteVal << 8);
-            byteVal += b[0];
-
-            //skip if beyond range
-            if (byteVal > StringExtractUnicodeTable.UNICODE_TABLE_SIZE - 1) {
-                break;
-            }
+            final char byteVal = bigEndian ? getUTF16Char(buff[curOffset], buff[curOffset + 1])
+                    : getUTF16Char(buff[curOffset + 1], buff[curOffset]);
+            curOffset += 2;
 
-            //lookup byteVal in the unicode table
-            SCRIPT scriptFound = unicodeTable.getScript(byteVal);
-
-            if (scriptFound == SCRIPT.NONE) {
+            final byte scriptClass = classes[byteVal];
+            if (scriptClass == CLASS_STOP) {
                 break;
             }
-
-            /*
-             else if (scriptFound == SCRIPT.CONTROL) {
-             //update bytes processed
-             res.numBytes += 2;
-             continue;
-             } else if (inControl) {
-             break;
-             }*/
-
-
-            final boolean isGeneric = StringExtractUnicodeTable.isGeneric(scriptFound);
-            //allow generic and one of enabled scripts we locked in to
-            if (isGeneric
-                    || isExtractionEnabled(scriptFound)) {
-
-                if (currentScript == SCRIPT.NONE
-                        && !isGeneric) {
-                    //handle case when this is the first char in the string
-                    //lock into the script
-                    currentScript = scriptFound;
-                }
-                //check if we are within the same script we are locked on to, or COMMON
-                if (currentScript == scriptFound
-                        || isGeneric) {
-                    if (res.numChars == 0) {
-                        //set the start offset of the string
-                        res.offset = curOffset;
-                    }
-                    //update bytes processed
-                    res.numBytes += 2;
-                    //append the char
-                    ++res.numChars;
-                    tempString.append(byteVal);
-                } else {
-                    //bail out
+            if (scriptClass != CLASS_GENERIC) {
+                if (currentScript == 0) {
+                    //first char in the string, lock into the script
+                    currentScript = scriptClass;
+                } else if (currentScript != scriptClass) {
                     break;
                 }
-            } else {
-                //bail out 
-                break;
             }
 
+            if (res.numChars == 0) {
+                //set the start offset of the string
+                res.offset = curOffset;
+            }
+            //update bytes processed
+            res.numBytes += 2;
+            ++res.numChars;
         } //no more data
+    }
 
-        res.textString = tempString.toString();
+    private void appendUTF16(byte[] buff, int offset, boolean bigEndian, int numChars) {
+        int curOffset = offset;
+        for (int i = 0; i < numChars; ++i) {
+            curString.append(bigEndian ? getUTF16Char(buff[curOffset], buff[curOffset + 1])
+                    : getUTF16Char(buff[curOffset + 1], buff[curOffset]));
+            curOffset += 2;
+        }
+    }
 
-        return res;
+    /**
+     * Decode the UTF8 character at the offset, based on "valid UTF-8 byte
+     * sequences" in the Unicode 5.0 book
+     *
+     * @return the character, with the number of bytes it takes in the upper
+     * bits (ch | bytes << UTF8_BYTES_SHIFT), or -1 if there is no valid
+     * character at the offset
+     */
+    private static int decodeUTF8(byte[] buff, int len, int curOffset) {
+        final int curByte = buff[curOffset] & 0xFF; //ensure we are not comparing signed bytes to ints
+        if (curByte <= 0x7F) {
+            return curByte | (1 << UTF8_BYTES_SHIFT);
+        } else if (curByte <= 0xC1) {
+            return -1;
+        } else if (curByte <= 0xDF) {
+            if (len - curOffset < 2) {
+                return -1;
+            }
+            final int curByte_1 = buff[curOffset + 1] & 0xFF;
+            if (curByte_1 >= 0x80 && curByte_1 <= 0xBF) {
+                return (((curByte & 0x1f) << 6) + (curByte_1 & 0x3f)) | (2 << UTF8_BYTES_SHIFT);
+            }
+            return -1;
+        } else if (curByte <= 0xEF) {
+            if (len - curOffset < 3) {
+                return -1;
+            }
+            final int curByte_1 = buff[curOffset + 1] & 0xFF;
+            final int curByte_2 = buff[curOffset + 2] & 0xFF;
+            //valid second byte range depends on the first byte
+            final int min_1 = curByte == 0xE0 ? 0xA0 : 0x80;
+            final int max_1 = curByte == 0xED ? 0x9F : 0xBF;
+            if (curByte_1 >= min_1 && curByte_1 <= max_1
+                    && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
+                return (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f)) | (3 << UTF8_BYTES_SHIFT);
+            }
+            return -1;
+        } else {
+            //4 byte characters are beyond the 2 byte unicode table
+            return -1;
+        }
     }
 
-    private StringExtractResult extractUTF8(byte[] buff, int len, int offset, final StringExtractResult res) {
+    /**
+     * Measure the UTF8 string at the offset, without decoding it into a
+     * string
+     */
+    private static void scanUTF8(byte[] buff, int len, int offset, byte[] classes, final StringExtractResult res) {
         res.reset();
 
         int curOffset = offset;
-        int ch = 0; //character being extracted
-        int chBytes; //num bytes consumed by current char (1 - 4)
-
-        final StringBuilder tempString = new StringBuilder();
-
-        SCRIPT currentScript = SCRIPT.NONE;
-
-        boolean inControl = false;
+        //script the string is locked in to, 0 until the first non-generic char
+        int currentScript = 0;
 
         //decode and extract a character
         while (curOffset < len) {
-            // based on "valid UTF-8 byte sequences" in the Unicode 5.0 book
-            final int curByte = buff[curOffset] & 0xFF; //ensure we are not comparing signed bytes to ints
-            if (curByte <= 0x7F) {
-                chBytes = 1;
-                ch = curByte;
-            } else if (curByte <= 0xC1) {
-                break;
-            } else if (curByte <= 0xDF) {
-                if (len - curOffset < 2) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF) {
-                    chBytes = 2;
-                    ch = (((curByte & 0x1f) << 6) + (curByte_1 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte == 0xE0) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-
-                if (curByte_1 >= 0xA0 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte <= 0xEC) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte == 0xED) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0x9F
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte <= 0xEF) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte == 0xF0) {
-                if (len - curOffset < 4) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                final int curByte_3 = buff[curOffset + 3] & 0xFF;
-                if (curByte_1 >= 0x90 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF
-                        && curByte_3 >= 0x80 && curByte_3 <= 0xBF) {
-                    chBytes = 4;
-                    ch = (((curByte & 0x07) << 18) + ((curByte_1 & 0x3f) << 12) + ((curByte_2 & 0x3f) << 6) + (curByte_3 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte <= 0xF3) {
-                if (len - curOffset < 4) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                final int curByte_3 = buff[curOffset + 3] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF
-                        && curByte_3 >= 0x80 && curByte_3 <= 0xBF) {
-                    chBytes = 4;
-                    ch = (((curByte & 0x07) << 18) + ((curByte_1 & 0x3f) << 12) + ((curByte_2 & 0x3f) << 6) + (curByte_3 & 0x3f));
-                } else {
-                    break;
-                }
-            } else {
+            final int decoded = decodeUTF8(buff, len, curOffset);
+            if (decoded == -1) {
                 break;
             }
-
-
+            final int chBytes = decoded >>> UTF8_BYTES_SHIFT;
             curOffset += chBytes;
 
-            //skip if beyond range
-            if (ch > StringExtractUnicodeTable.UNICODE_TABLE_SIZE - 1) {
+            final byte scriptClass = classes[decoded & UTF8_CHAR_MASK];
+            if (scriptClass == CLASS_STOP) {
                 break;
             }
-
-            //lookup byteVal in the unicode table
-            SCRIPT scriptFound = unicodeTable.getScript(ch);
-
-            if (scriptFound == SCRIPT.NONE) {
-                break;
-            }
-
-            /*else if (scriptFound == SCRIPT.CONTROL) {
-             //update bytes processed
-             res.numBytes += chBytes;
-             continue;
-             } else if (inControl) {
-             break;
-             }*/
-
-            final boolean isGeneric = StringExtractUnicodeTable.isGeneric(scriptFound);
-            //allow generic and one of enabled scripts we locked in to
-            if (isGeneric
-                    || isExtractionEnabled(scriptFound)) {
-
-                if (currentScript == SCRIPT.NONE
-                        && !isGeneric) {
-                    //handle case when this is the first char in the string
-                    //lock into the script
-                    currentScript = scriptFound;
-                }
-                //check if we are within the same script we are locked on to, or COMMON
-                if (currentScript == scriptFound
-                        || isGeneric) {
-                    if (res.numChars == 0) {
-                        //set the start byte offset of the string
-                        res.offset = curOffset;
-                    }
-                    //update bytes processed
-                    res.numBytes += chBytes;
-                    //append the char
-                    ++res.numChars;
-                    tempString.append((char) ch);
-                } else {
-                    //bail out
+            if (scriptClass != CLASS_GENERIC) {
+                if (currentScript == 0) {
+                    //first char in the string, lock into the script
+                    currentScript = scriptClass;
+                } else if (currentScript != scriptClass) {
                     break;
                 }
-            } else {
-                //bail out 
-                break;
             }
 
+            if (res.numChars == 0) {
+                //set the start byte offset of the string
+                res.offset = curOffset;
+            }
+            //update bytes processed
+            res.numBytes += chBytes;
+            ++res.numChars;
         } //no more data
+    }
 
-        res.textString = tempString.toString();
-
-        return res;
+    private void appendUTF8(byte[] buff, int offset, int numChars) {
+        int curOffset = offset;
+        for (int i = 0; i < numChars; ++i) {
+            final int decoded = decodeUTF8(buff, buff.length, curOffset);
+            curString.append((char) (decoded & UTF8_CHAR_MASK));
+            curOffset += decoded >>> UTF8_BYTES_SHIFT;
+        }
     }
     
     /*
@@ -1179,7 +1101,6 @@ public class StringExtract {
             }
         };
         private static final SCRIPT[] SCRIPT_VALUES = SCRIPT.values();
-        private static final String PROPERTY_FILE = "StringExtract.properties";
         /**
          * table has an entry for every possible 2-byte value
          */
@@ -1250,39 +1171,31 @@ public class StringExtract {
         }
 
         /**
-         * Initialization, loads unicode tables
+         * Initialization, expands the run-length encoded unicode table
          *
          * @return true if initialized properly, false otherwise
          */
         private boolean init() {
-            Properties properties = new Properties();
-            try {
-                //properties.load(new FileInputStream("StringExtract.properties"));            
-                InputStream inputStream = StringExtract.class.getResourceAsStream(PROPERTY_FILE);
-                properties.load(inputStream);
-                String table = properties.getProperty("UnicodeTable");
-                StringTokenizer st = new StringTokenizer(table, " ");
-                int toks = st.countTokens();
-                //logger.log(Level.INFO, "TABLE TOKS: " + toks);
-                if (toks != UNICODE_TABLE_SIZE) {
-                    logger.log(Level.WARNING, "Unicode table corrupt, expecting: " + UNICODE_TABLE_SIZE, ", have: " + toks);
-                    return false;
-                }
+            final char[] runStarts = StringExtractUnicodeTableData.RUN_STARTS;
+            final byte[] runScripts = StringExtractUnicodeTableData.RUN_SCRIPTS;
+            if (runStarts.length == 0 || runStarts.length != runScripts.length || runStarts[0] != 0) {
+                logger.log(Level.WARNING, "Unicode table corrupt, runs: " + runStarts.length + ", scripts: " + runScripts.length);
+                return false;
+            }
 
-                int tableIndex = 0;
-                while (st.hasMoreTokens()) {
-                    String tok = st.nextToken();
-                    char code = (char) Integer.parseInt(tok);
-                    unicodeTable[tableIndex++] = code;
+            for (int run = 0; run < runStarts.length; ++run) {
+                final int start = runStarts[run];
+                final int end = run + 1 < runStarts.length ? runStarts[run + 1] : UNICODE_TABLE_SIZE;
+                final byte script = runScripts[run];
+                if (end <= start || script < 0 || script >= SCRIPT_VALUES.length) {
+                    logger.log(Level.WARNING, "Unicode table corrupt at run: " + run);
+                    return false;
                 }
-
-                logger.log(Level.INFO, "initialized, unicode table loaded");
-
-            } catch (IOException ex) {
-                logger.log(Level.WARNING, "Could not load" + PROPERTY_FILE);
-                return false;
+                Arrays.fill(unicodeTable, start, end, (char) script);
             }
 
+            logger.log(Level.INFO, "initialized, unicode table loaded");
+
             return true;
 
         }
@@ -0,0 +1,173 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.coreutils;
+
+/**
+ * Unicode script table of StringExtractUnicodeTable, run-length encoded: the
+ * first character value of every run of characters of the same script, and
+ * the script of the run, as the ordinal of StringExtractUnicodeTable.SCRIPT.
+ *
+ * Generated by Core/tools/gen_unicode_table.py from the script table in
+ * Core/tools/StringExtract.properties, one script ordinal per 2-byte value,
+ * so that the table is expanded from a few hundred runs instead of parsed
+ * from 65536 tokens. Do not edit, regenerate if the table or the SCRIPT enum
+ * order changes.
+ */
+final class StringExtractUnicodeTableData {
+
+    /**
+     * first character value of each run, in increasing order
+     */
+    static final char[] RUN_STARTS = {
+        0x0000, 0x0009, 0x000A, 0x0020, 0x0041, 0x005B, 0x0061, 0x007B, 0x007F, 0x00A0,
+        0x00AA, 0x00AB, 0x00BA, 0x00BB, 0x00C0, 0x00D7, 0x00D8, 0x00F7, 0x00F8, 0x0100,
+        0x02B9, 0x02E0, 0x02E5, 0x0300, 0x0370, 0x0374, 0x0376, 0x037A, 0x037E, 0x037F,
+        0x0384, 0x0387, 0x0388, 0x038B, 0x038C, 0x038D, 0x038E, 0x03A2, 0x03A3, 0x03CF,
+        0x03D0, 0x03E2, 0x03F0, 0x0400, 0x0487, 0x0488, 0x0514, 0x0531, 0x0557, 0x0559,
+        0x0560, 0x0561, 0x0588, 0x0589, 0x058A, 0x058B, 0x0591, 0x05C8, 0x05D0, 0x05EB,
+        0x05F0, 0x05F5, 0x0600, 0x0604, 0x060B, 0x060C, 0x060D, 0x0616, 0x061B, 0x061C,
+        0x061E, 0x061F, 0x0620, 0x0621, 0x063B, 0x0640, 0x0641, 0x064B, 0x0656, 0x065F,
+        0x0660, 0x066A, 0x0670, 0x0671, 0x06DD, 0x06DE, 0x0700, 0x070E, 0x070F, 0x074B,
+        0x074D, 0x0750, 0x076E, 0x0780, 0x07B2, 0x07C0, 0x07FB, 0x0901, 0x093A, 0x093C,
+        0x094E, 0x0950, 0x0955, 0x0958, 0x0964, 0x0966, 0x0970, 0x0971, 0x097B, 0x0980,
+        0x0981, 0x0984, 0x0985, 0x098D, 0x098F, 0x0991, 0x0993, 0x09A9, 0x09AA, 0x09B1,
+        0x09B2, 0x09B3, 0x09B6, 0x09BA, 0x09BC, 0x09C5, 0x09C7, 0x09C9, 0x09CB, 0x09CF,
+        0x09D7, 0x09D8, 0x09DC, 0x09DE, 0x09DF, 0x09E4, 0x09E6, 0x09FB, 0x0A01, 0x0A04,
+        0x0A05, 0x0A0B, 0x0A0F, 0x0A11, 0x0A13, 0x0A29, 0x0A2A, 0x0A31, 0x0A32, 0x0A34,
+        0x0A35, 0x0A37, 0x0A38, 0x0A3A, 0x0A3C, 0x0A3D, 0x0A3E, 0x0A43, 0x0A47, 0x0A49,
+        0x0A4B, 0x0A4E, 0x0A59, 0x0A5D, 0x0A5E, 0x0A5F, 0x0A66, 0x0A75, 0x0A81, 0x0A84,
+        0x0A85, 0x0A8E, 0x0A8F, 0x0A92, 0x0A93, 0x0AA9, 0x0AAA, 0x0AB1, 0x0AB2, 0x0AB4,
+        0x0AB5, 0x0ABA, 0x0ABC, 0x0AC6, 0x0AC7, 0x0ACA, 0x0ACB, 0x0ACE, 0x0AD0, 0x0AD1,
+        0x0AE0, 0x0AE4, 0x0AE6, 0x0AF0, 0x0AF1, 0x0AF2, 0x0B01, 0x0B04, 0x0B05, 0x0B0D,
+        0x0B0F, 0x0B11, 0x0B13, 0x0B29, 0x0B2A, 0x0B31, 0x0B32, 0x0B34, 0x0B35, 0x0B3A,
+        0x0B3C, 0x0B44, 0x0B47, 0x0B49, 0x0B4B, 0x0B4E, 0x0B56, 0x0B58, 0x0B5C, 0x0B5E,
+        0x0B5F, 0x0B62, 0x0B66, 0x0B72, 0x0B82, 0x0B84, 0x0B85, 0x0B8B, 0x0B8E, 0x0B91,
+        0x0B92, 0x0B96, 0x0B99, 0x0B9B, 0x0B9C, 0x0B9D, 0x0B9E, 0x0BA0, 0x0BA3, 0x0BA5,
+        0x0BA8, 0x0BAB, 0x0BAE, 0x0BBA, 0x0BBE, 0x0BC3, 0x0BC6, 0x0BC9, 0x0BCA, 0x0BCE,
+        0x0BD7, 0x0BD8, 0x0BE6, 0x0BFB, 0x0C01, 0x0C04, 0x0C05, 0x0C0D, 0x0C0E, 0x0C11,
+        0x0C12, 0x0C29, 0x0C2A, 0x0C34, 0x0C35, 0x0C3A, 0x0C3E, 0x0C45, 0x0C46, 0x0C49,
+        0x0C4A, 0x0C4E, 0x0C55, 0x0C57, 0x0C60, 0x0C62, 0x0C66, 0x0C70, 0x0C82, 0x0C84,
+        0x0C85, 0x0C8D, 0x0C8E, 0x0C91, 0x0C92, 0x0CA9, 0x0CAA, 0x0CB4, 0x0CB5, 0x0CBA,
+        0x0CBC, 0x0CC5, 0x0CC6, 0x0CC9, 0x0CCA, 0x0CCE, 0x0CD5, 0x0CD7, 0x0CDE, 0x0CDF,
+        0x0CE0, 0x0CE4, 0x0CE6, 0x0CF0, 0x0CF1, 0x0CF3, 0x0D02, 0x0D04, 0x0D05, 0x0D0D,
+        0x0D0E, 0x0D11, 0x0D12, 0x0D29, 0x0D2A, 0x0D3A, 0x0D3E, 0x0D44, 0x0D46, 0x0D49,
+        0x0D4A, 0x0D4E, 0x0D57, 0x0D58, 0x0D60, 0x0D62, 0x0D66, 0x0D70, 0x0D82, 0x0D84,
+        0x0D85, 0x0D97, 0x0D9A, 0x0DB2, 0x0DB3, 0x0DBC, 0x0DBD, 0x0DBE, 0x0DC0, 0x0DC7,
+        0x0DCA, 0x0DCB, 0x0DCF, 0x0DD5, 0x0DD6, 0x0DD7, 0x0DD8, 0x0DE0, 0x0DF2, 0x0DF5,
+        0x0E01, 0x0E3B, 0x0E3F, 0x0E40, 0x0E5C, 0x0E81, 0x0E83, 0x0E84, 0x0E85, 0x0E87,
+        0x0E89, 0x0E8A, 0x0E8B, 0x0E8D, 0x0E8E, 0x0E94, 0x0E98, 0x0E99, 0x0EA0, 0x0EA1,
+        0x0EA4, 0x0EA5, 0x0EA6, 0x0EA7, 0x0EA8, 0x0EAA, 0x0EAC, 0x0EAD, 0x0EBA, 0x0EBB,
+        0x0EBE, 0x0EC0, 0x0EC5, 0x0EC6, 0x0EC7, 0x0EC8, 0x0ECE, 0x0ED0, 0x0EDA, 0x0EDC,
+        0x0EDE, 0x0F00, 0x0F48, 0x0F49, 0x0F6B, 0x0F71, 0x0F8C, 0x0F90, 0x0F98, 0x0F99,
+        0x0FBD, 0x0FBE, 0x0FCD, 0x0FCF, 0x0FD2, 0x1000, 0x1022, 0x1023, 0x1028, 0x1029,
+        0x102B, 0x102C, 0x1033, 0x1036, 0x103A, 0x1040, 0x105A, 0x10A0, 0x10C6, 0x10D0,
+        0x10FB, 0x10FC, 0x10FD, 0x1100, 0x115A, 0x115F, 0x11A3, 0x11A8, 0x11FA, 0x1200,
+        0x1249, 0x124A, 0x124E, 0x1250, 0x1257, 0x1258, 0x1259, 0x125A, 0x125E, 0x1260,
+        0x1289, 0x128A, 0x128E, 0x1290, 0x12B1, 0x12B2, 0x12B6, 0x12B8, 0x12BF, 0x12C0,
+        0x12C1, 0x12C2, 0x12C6, 0x12C8, 0x12D7, 0x12D8, 0x1311, 0x1312, 0x1316, 0x1318,
+        0x135B, 0x135F, 0x137D, 0x1380, 0x139A, 0x13A0, 0x13F5, 0x1401, 0x1677, 0x1680,
+        0x169D, 0x16A0, 0x16EB, 0x16EE, 0x16F1, 0x1700, 0x170D, 0x170E, 0x1715, 0x1720,
+        0x1735, 0x1737, 0x1740, 0x1754, 0x1760, 0x176D, 0x176E, 0x1771, 0x1772, 0x1774,
+        0x1780, 0x17DE, 0x17E0, 0x17EA, 0x17F0, 0x17FA, 0x1800, 0x1802, 0x1804, 0x1805,
+        0x1806, 0x180F, 0x1810, 0x181A, 0x1820, 0x1878, 0x1880, 0x18AA, 0x1900, 0x191D,
+        0x1920, 0x192C, 0x1930, 0x193C, 0x1940, 0x1941, 0x1944, 0x1950, 0x196E, 0x1970,
+        0x1975, 0x1980, 0x19AA, 0x19B0, 0x19CA, 0x19D0, 0x19DA, 0x19DE, 0x19E0, 0x1A00,
+        0x1A1C, 0x1A1E, 0x1A20, 0x1B00, 0x1B4C, 0x1B50, 0x1B7D, 0x1D00, 0x1D26, 0x1D2B,
+        0x1D2C, 0x1D5D, 0x1D62, 0x1D66, 0x1D6B, 0x1D78, 0x1D79, 0x1DBF, 0x1DC0, 0x1DCB,
+        0x1DFE, 0x1E00, 0x1E9C, 0x1EA0, 0x1EFA, 0x1F00, 0x1F16, 0x1F18, 0x1F1E, 0x1F20,
+        0x1F46, 0x1F48, 0x1F4E, 0x1F50, 0x1F58, 0x1F59, 0x1F5A, 0x1F5B, 0x1F5C, 0x1F5D,
+        0x1F5E, 0x1F5F, 0x1F7E, 0x1F80, 0x1FB5, 0x1FB6, 0x1FC5, 0x1FC6, 0x1FD4, 0x1FD6,
+        0x1FDC, 0x1FDD, 0x1FF0, 0x1FF2, 0x1FF5, 0x1FF6, 0x1FFF, 0x2000, 0x200C, 0x200E,
+        0x2064, 0x206A, 0x2071, 0x2072, 0x2074, 0x207F, 0x2080, 0x208F, 0x2090, 0x2095,
+        0x20A0, 0x20B6, 0x20D0, 0x20F0, 0x2100, 0x2126, 0x2127, 0x212A, 0x212C, 0x2132,
+        0x2133, 0x214E, 0x214F, 0x2153, 0x2184, 0x2185, 0x2190, 0x23E8, 0x2400, 0x2427,
+        0x2440, 0x244B, 0x2460, 0x269D, 0x26A0, 0x26B3, 0x2701, 0x2705, 0x2706, 0x270A,
+        0x270C, 0x2728, 0x2729, 0x274C, 0x274D, 0x274E, 0x274F, 0x2753, 0x2756, 0x2757,
+        0x2758, 0x275F, 0x2761, 0x2795, 0x2798, 0x27B0, 0x27B1, 0x27BF, 0x27C0, 0x27CB,
+        0x27D0, 0x27EC, 0x27F0, 0x2800, 0x2900, 0x2B1B, 0x2B20, 0x2B24, 0x2C00, 0x2C2F,
+        0x2C30, 0x2C5F, 0x2C60, 0x2C6D, 0x2C74, 0x2C78, 0x2C80, 0x2CEB, 0x2CF9, 0x2D00,
+        0x2D26, 0x2D30, 0x2D66, 0x2D6F, 0x2D70, 0x2D80, 0x2D97, 0x2DA0, 0x2DA7, 0x2DA8,
+        0x2DAF, 0x2DB0, 0x2DB7, 0x2DB8, 0x2DBF, 0x2DC0, 0x2DC7, 0x2DC8, 0x2DCF, 0x2DD0,
+        0x2DD7, 0x2DD8, 0x2DDF, 0x2E00, 0x2E18, 0x2E1C, 0x2E1E, 0x2E80, 0x2E9A, 0x2E9B,
+        0x2EF4, 0x2F00, 0x2FD6, 0x2FF0, 0x2FFC, 0x3000, 0x3005, 0x3006, 0x3007, 0x3008,
+        0x3021, 0x302A, 0x3030, 0x3038, 0x303C, 0x3040, 0x3041, 0x3097, 0x3099, 0x309B,
+        0x309D, 0x30A0, 0x30A1, 0x30FB, 0x30FD, 0x3100, 0x3105, 0x312D, 0x3131, 0x318F,
+        0x3190, 0x31A0, 0x31B8, 0x31C0, 0x31D0, 0x31F0, 0x3200, 0x321F, 0x3220, 0x3244,
+        0x3250, 0x3260, 0x327E, 0x32FF, 0x3300, 0x3400, 0x4DB6, 0x4DC0, 0x4E00, 0x9FBC,
+        0xA000, 0xA48D, 0xA490, 0xA4C7, 0xA700, 0xA71B, 0xA720, 0xA722, 0xA800, 0xA82C,
+        0xA840, 0xA878, 0xAC00, 0xD7A4, 0xF900, 0xFA2E, 0xFA30, 0xFA6B, 0xFA70, 0xFADA,
+        0xFB00, 0xFB07, 0xFB13, 0xFB18, 0xFB1D, 0xFB37, 0xFB38, 0xFB3D, 0xFB3E, 0xFB3F,
+        0xFB40, 0xFB42, 0xFB43, 0xFB45, 0xFB46, 0xFB50, 0xFBB2, 0xFBD3, 0xFD3E, 0xFD40,
+        0xFD50, 0xFD90, 0xFD92, 0xFDC8, 0xFDF0, 0xFDFD, 0xFDFE, 0xFE00, 0xFE10, 0xFE1A,
+        0xFE20, 0xFE24, 0xFE30, 0xFE53, 0xFE54, 0xFE67, 0xFE68, 0xFE6C, 0xFE70, 0xFE75,
+        0xFE76, 0xFEFD, 0xFEFF, 0xFF00, 0xFF01, 0xFF21, 0xFF3B, 0xFF41, 0xFF5B, 0xFF66,
+        0xFF70, 0xFF71, 0xFF9E, 0xFFA0, 0xFFBF, 0xFFC2, 0xFFC8, 0xFFCA, 0xFFD0, 0xFFD2,
+        0xFFD8, 0xFFDA, 0xFFDD, 0xFFE0, 0xFFE7, 0xFFE8, 0xFFEF, 0xFFF9, 0xFFFE
+    };
+    /**
+     * script ordinal of each run
+     */
+    static final byte[] RUN_SCRIPTS = {
+        67, 1, 67, 1, 2, 1, 2, 1, 67, 1, 2, 1, 2, 1, 2, 1, 2, 1, 2, 68,
+        1, 68, 1, 41, 0, 3, 0, 3, 1, 0, 3, 1, 3, 0, 3, 0, 3, 0, 3, 0,
+        3, 55, 3, 4, 0, 4, 0, 5, 0, 5, 0, 5, 0, 1, 5, 0, 6, 0, 6, 0,
+        6, 0, 1, 0, 7, 1, 7, 0, 1, 0, 7, 1, 0, 7, 0, 1, 7, 41, 7, 0,
+        1, 7, 41, 7, 1, 7, 8, 0, 8, 0, 8, 7, 0, 9, 0, 66, 0, 10, 0, 10,
+        0, 10, 0, 10, 1, 10, 1, 0, 10, 0, 11, 0, 11, 0, 11, 0, 11, 0, 11, 0,
+        11, 0, 11, 0, 11, 0, 11, 0, 11, 0, 11, 0, 11, 0, 11, 0, 11, 0, 12, 0,
+        12, 0, 12, 0, 12, 0, 12, 0, 12, 0, 12, 0, 12, 0, 12, 0, 12, 0, 12, 0,
+        12, 0, 12, 0, 12, 0, 12, 0, 13, 0, 13, 0, 13, 0, 13, 0, 13, 0, 13, 0,
+        13, 0, 13, 0, 13, 0, 13, 0, 13, 0, 13, 0, 13, 0, 13, 0, 14, 0, 14, 0,
+        14, 0, 14, 0, 14, 0, 14, 0, 14, 0, 14, 0, 14, 0, 14, 0, 14, 0, 14, 0,
+        14, 0, 14, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0,
+        15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 15, 0, 16, 0, 16, 0, 16, 0,
+        16, 0, 16, 0, 16, 0, 16, 0, 16, 0, 16, 0, 16, 0, 16, 0, 16, 0, 17, 0,
+        17, 0, 17, 0, 17, 0, 17, 0, 17, 0, 17, 0, 17, 0, 17, 0, 17, 0, 17, 0,
+        17, 0, 17, 0, 17, 0, 18, 0, 18, 0, 18, 0, 18, 0, 18, 0, 18, 0, 18, 0,
+        18, 0, 18, 0, 18, 0, 18, 0, 19, 0, 19, 0, 19, 0, 19, 0, 19, 0, 19, 0,
+        19, 0, 19, 0, 19, 0, 19, 0, 19, 0, 20, 0, 1, 20, 0, 21, 0, 21, 0, 21,
+        0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 21,
+        0, 21, 0, 21, 0, 21, 0, 21, 0, 21, 0, 22, 0, 22, 0, 22, 0, 22, 0, 22,
+        0, 22, 0, 22, 0, 23, 0, 23, 0, 23, 0, 23, 0, 23, 0, 23, 0, 24, 0, 24,
+        1, 24, 0, 25, 0, 25, 0, 25, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26,
+        0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26,
+        0, 26, 0, 26, 0, 27, 0, 28, 0, 29, 0, 30, 1, 30, 0, 42, 0, 42, 0, 43,
+        1, 0, 44, 0, 45, 0, 45, 0, 45, 0, 31, 0, 31, 0, 31, 0, 32, 1, 32, 1,
+        32, 0, 32, 0, 32, 0, 32, 0, 46, 0, 46, 0, 46, 0, 46, 0, 46, 47, 0, 47,
+        0, 56, 0, 56, 0, 56, 0, 56, 31, 54, 0, 54, 0, 62, 0, 62, 0, 68, 3, 4,
+        68, 3, 68, 3, 68, 4, 68, 3, 41, 0, 41, 68, 0, 68, 0, 3, 0, 3, 0, 3,
+        0, 3, 0, 3, 0, 3, 0, 3, 0, 3, 0, 3, 0, 3, 0, 3, 0, 3, 0, 3,
+        0, 3, 0, 3, 0, 3, 0, 1, 41, 1, 0, 1, 68, 0, 1, 68, 1, 0, 68, 0,
+        1, 0, 41, 0, 1, 3, 1, 68, 1, 68, 1, 68, 0, 1, 68, 0, 1, 0, 1, 0,
+        1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0,
+        1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 53, 1, 0, 1, 0, 57, 0,
+        57, 0, 68, 0, 68, 0, 55, 0, 55, 24, 0, 58, 0, 58, 0, 26, 0, 26, 0, 26,
+        0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 26, 0, 1, 0, 1, 0, 36, 0, 36,
+        0, 36, 0, 1, 0, 1, 36, 1, 36, 1, 36, 41, 1, 36, 1, 0, 33, 0, 41, 1,
+        33, 1, 34, 1, 34, 0, 35, 0, 25, 0, 1, 35, 0, 1, 0, 34, 25, 0, 1, 0,
+        1, 25, 1, 0, 1, 36, 0, 1, 36, 0, 37, 0, 37, 0, 1, 0, 1, 0, 59, 0,
+        65, 0, 25, 0, 36, 0, 36, 0, 36, 0, 68, 0, 5, 0, 6, 0, 6, 0, 6, 0,
+        6, 0, 6, 0, 6, 7, 0, 7, 1, 0, 7, 0, 7, 0, 7, 1, 0, 41, 1, 0,
+        41, 0, 1, 0, 1, 0, 1, 0, 7, 0, 7, 0, 67, 0, 1, 2, 1, 2, 1, 34,
+        1, 34, 1, 25, 0, 25, 0, 25, 0, 25, 0, 25, 0, 1, 0, 1, 0, 1, 0
+    };
+
+    private StringExtractUnicodeTableData() {
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2013 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.coreutils;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractResult;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+
+/**
+ * Checks the string extraction results against the output of the original
+ * implementation, for the same buffers and settings
+ */
+public class StringExtractTest {
+
+    private static final String MIXED = "Hello world \u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 "
+            + "\u4f60\u597d\u4e16\u754c \u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd "
+            + "\u0645\u0631\u062d\u0628\u0627 \u3053\u3093\u306b\u3061\u306f";
+    private static final byte[] JUNK = new byte[]{(byte) 0xff, 0x01, (byte) 0x80, 0x07};
+    private static final byte[] MIXED_UTF8 = concat(JUNK, encode(MIXED, "UTF-8"), JUNK);
+    private static final byte[] MIXED_UTF16LE = concat(JUNK, encode(MIXED, "UTF-16LE"), JUNK);
+    private static final byte[] MIXED_UTF16BE = concat(JUNK, encode(MIXED, "UTF-16BE"), JUNK);
+
+    @Test
+    public void testMixedScriptsUTF8() {
+        assertResult("\uff01\u8007\u4865\u6c6c\u6f20\u776f\u726c\u6420\n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n\u4f60\u597d\u4e16\u754c \n\u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd \n\u0645\u0631\u062d\u0628\u0627 \n\u3053\u3093\u306b\u3061\u306f\n", 2, 93, 96, 96,
+                new StringExtract().extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+    }
+
+    @Test
+    public void testMixedScriptsUTF16LE() {
+        assertResult("\uff01\u8007\u4800\u6500\u6c00\u6c00\u6f00\u2000\u7700\u6f00\u7200\u6c00\u6400\u2000\n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n\u4f60\u597d\u4e16\u754c \n\u04e9\u04dc\u04d5\u04dd \u04e2\u04d5\u04dc\u04dd \n\u0645\u0631\u062d\u0628\u0627 \n\u5330\u9330\u6b30\u6130\u6f30\uff01\u8007\n", 2, 106, 108, 112,
+                new StringExtract().extract(MIXED_UTF16LE, MIXED_UTF16LE.length, 0));
+    }
+
+    @Test
+    public void testMixedScriptsUTF16BE() {
+        assertResult("\u4800\u6500\u6c00\u6c00\u6f00\u2000\u7700\u6f00\u7200\u6c00\u6400\u2000\n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \nO`Y}N\n \u04e9\u04dc\u04d5\u04dd \u04e2\u04d5\u04dc\u04dd \n\u0645\u0631\u062d\u0628\u0627 \n\u5330\u9330\u6b30\u6130\u6f30\n", 6, 95, 104, 106,
+                new StringExtract().extract(MIXED_UTF16BE, MIXED_UTF16BE.length, 0));
+    }
+
+    @Test
+    public void testUTF8Only() {
+        StringExtract extract = new StringExtract();
+        extract.setEnableUTF16(false);
+        assertResult("Hello world \n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n\u4f60\u597d\u4e16\u754c \n\u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd \n\u0645\u0631\u062d\u0628\u0627 \n\u3053\u3093\u306b\u3061\u306f\n", 5, 89, 96, 104,
+                extract.extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+        assertResult("`O}Y\nNLu \n0k0a0o0\n", 51, 15, 103, 33,
+                extract.extract(MIXED_UTF16LE, MIXED_UTF16LE.length, 0));
+    }
+
+    @Test
+    public void testUTF16Only() {
+        StringExtract extract = new StringExtract();
+        extract.setEnableUTF8(false);
+        assertResult("\uff01\u8007\u4800\u6500\u6c00\u6c00\u6f00\u2000\u7700\u6f00\u7200\u6c00\u6400\u2000\n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n\u4f60\u597d\u4e16\u754c \n\u04e9\u04dc\u04d5\u04dd \u04e2\u04d5\u04dc\u04dd \n\u0645\u0631\u062d\u0628\u0627 \n\u5330\u9330\u6b30\u6130\u6f30\uff01\u8007\n", 2, 106, 108, 112,
+                extract.extract(MIXED_UTF16LE, MIXED_UTF16LE.length, 0));
+        assertResult("\uff01\u8007\u4865\u6c6c\u6f20\u776f\u726c\u6420\n\ucf9f\ud080\ucfb8\ucfb2\ucfb5\ud082\n\ud720\ud6a9\ud69c\ud695\n\ud6a2\ud695\ud69c\ud69d\n", 2, 44, 68, 48,
+                extract.extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+    }
+
+    @Test
+    public void testNoEncoding() {
+        StringExtract extract = new StringExtract();
+        extract.setEnableUTF8(false);
+        extract.setEnableUTF16(false);
+        assertResult(null, 0, 0, 0, 0,
+                extract.extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+    }
+
+    @Test
+    public void testEnabledScripts() {
+        StringExtract extract = new StringExtract();
+        extract.setEnabledScript(SCRIPT.LATIN_1);
+        assertResult("Hello world \n", 5, 12, 17, 25,
+                extract.extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+        assertResult("Hello world \n`O}Y\nNLu \n0k0a0o0\n", 6, 39, 103, 58,
+                extract.extract(MIXED_UTF16LE, MIXED_UTF16LE.length, 0));
+
+        extract.setEnabledScripts(Arrays.asList(SCRIPT.LATIN_1, SCRIPT.CYRILLIC));
+        assertResult("Hello world \n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n", 5, 32, 38, 48,
+                extract.extract(MIXED_UTF8, MIXED_UTF8.length, 0));
+    }
+
+    @Test
+    public void testLenShorterThanBuffer() {
+        assertResult("\uff01\u8007\u4865\u6c6c\u6f20\u776f\u726c\u6420\n", 2, 16, 18, 17,
+                new StringExtract().extract(MIXED_UTF8, 20, 0));
+        assertResult("\uff01\u8007\u4800\u6500\u6c00\u6c00\u6f00\u2000\u7700\u6f00\u7200\u6c00\u6400\u2000\n", 2, 28, 30, 29,
+                new StringExtract().extract(MIXED_UTF16LE, 30, 0));
+    }
+
+    @Test
+    public void testOffset() {
+        assertResult("world \n\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440 \n\u4f60\u597d\u4e16\u754c \n\u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd \n\u0645\u0631\u062d\u0628\u0627 \n\u3053\u3093\u306b\u3061\u306f\n", 11, 83, 96, 92,
+                new StringExtract().extract(MIXED_UTF8, MIXED_UTF8.length, 10));
+    }
+
+    @Test
+    public void testZeroRuns() {
+        final byte[] buff = concat(new byte[16], encode("first string", "UTF-8"), new byte[7],
+                encode("second", "UTF-8"), new byte[1], encode("third one", "UTF-8"), new byte[9]);
+        assertResult("first string\nsecond\nthird one\n", 17, 27, 52, 57,
+                new StringExtract().extract(buff, buff.length, 0));
+
+        final byte[] buffUTF16 = concat(new byte[5], encode("wide text", "UTF-16LE"), new byte[8],
+                encode("more", "UTF-16LE"), new byte[3]);
+        assertResult("\u7700\u6900\u6400\u6500\u2000\u7400\u6500\u7800\u7400\n\u6d00\u6f00\u7200\u6500\n", 6, 26, 40, 28,
+                new StringExtract().extract(buffUTF16, buffUTF16.length, 0));
+
+        assertResult("", 0, 0, 0, 0,
+                new StringExtract().extract(new byte[64], 64, 0));
+    }
+
+    @Test
+    public void testMinChars() {
+        final byte[] buff = concat(encode("abc", "UTF-8"), new byte[2], encode("abcd", "UTF-8"), new byte[1]);
+        assertResult("abcd\n", 6, 4, 10, 9,
+                new StringExtract().extract(buff, buff.length, 0));
+    }
+
+    private static void assertResult(String text, int startOffset, int numBytes, int firstUnprocessedOff, int textLength,
+            StringExtractResult res) {
+        assertEquals(text, res.getText());
+        assertEquals("start offset", startOffset, res.getStartOffset());
+        assertEquals("number of bytes", numBytes, res.getNumBytes());
+        assertEquals("first unprocessed offset", firstUnprocessedOff, res.getFirstUnprocessedOff());
+        assertEquals("text length", textLength, res.getTextLength());
+    }
+
+    private static byte[] encode(String str, String charset) {
+        return str.getBytes(Charset.forName(charset));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int len = 0;
+        for (byte[] part : parts) {
+            len += part.length;
+        }
+        byte[] ret = new byte[len];
+        int off = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, ret, off, part.length);
+            off += part.length;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,92 @@
+# ============================================================
+#                    gen_unicode_table.py
+# ============================================================
+#
+# Generates StringExtractUnicodeTableData.java, the run-length
+# encoded unicode script table of StringExtract, from the table
+# in StringExtract.properties: one script ordinal per 2-byte
+# value, the ordinals of StringExtractUnicodeTable.SCRIPT.
+#
+# Run from this directory after the table or the SCRIPT enum
+# order changes:
+#   python gen_unicode_table.py
+# ------------------------------------------------------------
+
+import os
+
+TABLE_FILE = "StringExtract.properties"
+COREUTILS_DIR = os.path.join("..", "src", "org", "sleuthkit", "autopsy", "coreutils")
+DATA_FILE = os.path.join(COREUTILS_DIR, "StringExtractUnicodeTableData.java")
+LICENSE_FILE = os.path.join(COREUTILS_DIR, "StringExtract.java")
+TABLE_SIZE = 65536
+
+# Read the script ordinal of every 2-byte value
+def read_table():
+    with open(TABLE_FILE) as f:
+        for line in f:
+            if line.startswith("UnicodeTable="):
+                table = [int(tok) for tok in line[len("UnicodeTable="):].split()]
+                if len(table) != TABLE_SIZE:
+                    raise ValueError("Unicode table corrupt, expecting: %d, have: %d" % (TABLE_SIZE, len(table)))
+                return table
+    raise ValueError("No UnicodeTable in " + TABLE_FILE)
+
+# Get the start value and script of every run of values of the same script
+def get_runs(table):
+    starts = [0]
+    scripts = [table[0]]
+    for i in range(1, len(table)):
+        if table[i] != table[i - 1]:
+            starts.append(i)
+            scripts.append(table[i])
+    return starts, scripts
+
+def wrap(values, per_line):
+    lines = []
+    for i in range(0, len(values), per_line):
+        lines.append("        " + ", ".join(values[i:i + per_line]) + ",")
+    lines[-1] = lines[-1][:-1]
+    return "\n".join(lines)
+
+def main():
+    starts, scripts = get_runs(read_table())
+    with open(LICENSE_FILE) as f:
+        license = "".join(f.readlines()[:18])
+    out = license + """package org.sleuthkit.autopsy.coreutils;
+
+/**
+ * Unicode script table of StringExtractUnicodeTable, run-length encoded: the
+ * first character value of every run of characters of the same script, and
+ * the script of the run, as the ordinal of StringExtractUnicodeTable.SCRIPT.
+ *
+ * Generated by Core/tools/gen_unicode_table.py from the script table in
+ * Core/tools/StringExtract.properties, one script ordinal per 2-byte value,
+ * so that the table is expanded from a few hundred runs instead of parsed
+ * from 65536 tokens. Do not edit, regenerate if the table or the SCRIPT enum
+ * order changes.
+ */
+final class StringExtractUnicodeTableData {
+
+    /**
+     * first character value of each run, in increasing order
+     */
+    static final char[] RUN_STARTS = {
+""" + wrap(["0x%04X" % s for s in starts], 10) + """
+    };
+    /**
+     * script ordinal of each run
+     */
+    static final byte[] RUN_SCRIPTS = {
+""" + wrap([str(s) for s in scripts], 20) + """
+    };
+
+    private StringExtractUnicodeTableData() {
+    }
+}
+"""
+    with open(DATA_FILE, "w") as f:
+        f.write(out)
+    print("Wrote %d runs to %s" % (len(starts), DATA_FILE))
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,167 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.FsContent;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskData;
+import org.sleuthkit.datamodel.TskException;
+
+/**
+ * Resolves the files of keyword hits by object id. Files not recently
+ * resolved are looked up in batches, with a single query per batch, and kept
+ * in a small LRU cache shared by all keyword search result paths.
+ *
+ * The cache is cleared when the case is closed.
+ */
+class AbstractFileCache {
+
+    private static final Logger logger = Logger.getLogger(AbstractFileCache.class.getName());
+    private static final int MAX_CACHED_FILES = 10000;
+    //max ids in a single IN list
+    private static final int LOOKUP_BATCH_SIZE = 500;
+    private static AbstractFileCache instance;
+    private final Map<Long, AbstractFile> cache = new LinkedHashMap<Long, AbstractFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, AbstractFile> eldest) {
+            return size() > MAX_CACHED_FILES;
+        }
+    };
+
+    private AbstractFileCache() {
+    }
+
+    static synchronized AbstractFileCache getDefault() {
+        if (instance == null) {
+            instance = new AbstractFileCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Drop all cached files, e.g. when the case is closed
+     */
+    void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get the files with the object ids
+     *
+     * @param sc case to look up the files in
+     * @param fileIDs object ids of the files
+     * @return map of object id to file, files that do not exist are not
+     * included
+     * @throws TskException if a file could not be retrieved
+     */
+    Map<Long, AbstractFile> getFiles(SleuthkitCase sc, Collection<Long> fileIDs) throws TskException {
+        Map<Long, AbstractFile> files = new HashMap<Long, AbstractFile>();
+        Set<Long> missing = new LinkedHashSet<Long>();
+        synchronized (cache) {
+            for (Long fileID : fileIDs) {
+                final AbstractFile file = cache.get(fileID);
+                if (file != null) {
+                    files.put(fileID, file);
+                } else {
+                    missing.add(fileID);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return files;
+        }
+
+        Map<Long, AbstractFile> resolved = new HashMap<Long, AbstractFile>();
+        List<Long> missingList = new ArrayList<Long>(missing);
+        for (int i = 0; i < missingList.size(); i += LOOKUP_BATCH_SIZE) {
+            final List<Long> batch = missingList.subList(i, Math.min(missingList.size(), i + LOOKUP_BATCH_SIZE));
+            resolved.putAll(queryFsFiles(sc, batch));
+        }
+        //files not in a file system, such as unallocated space files, are looked up one by one
+        for (Long fileID : missingList) {
+            if (!resolved.containsKey(fileID)) {
+                final AbstractFile file = sc.getAbstractFileById(fileID);
+                if (file != null) {
+                    resolved.put(fileID, file);
+                }
+            }
+        }
+
+        synchronized (cache) {
+            cache.putAll(resolved);
+        }
+        files.putAll(resolved);
+        return files;
+    }
+
+    /**
+     * Get the file system files with the object ids in a single query
+     *
+     * @return map of object id to file, empty if the query failed
+     */
+    private static Map<Long, AbstractFile> queryFsFiles(SleuthkitCase sc, List<Long> fileIDs) {
+        Map<Long, AbstractFile> files = new HashMap<Long, AbstractFile>();
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT * FROM tsk_files WHERE type = '")
+                .append(TskData.TSK_DB_FILES_TYPE_ENUM.FS.getFileType())
+                .append("' AND obj_id IN (");
+        for (int i = 0; i < fileIDs.size(); ++i) {
+            if (i > 0) {
+                query.append(",");
+            }
+            query.append(fileIDs.get(i));
+        }
+        query.append(")");
+
+        ResultSet rs = null;
+        try {
+            rs = sc.runQuery(query.toString());
+            for (FsContent file : sc.resultSetToFsContents(rs)) {
+                files.put(file.getId(), file);
+            }
+        } catch (SQLException ex) {
+            logger.log(Level.WARNING, "Error looking up files of keyword hits", ex);
+        } finally {
+            if (rs != null) {
+                try {
+                    sc.closeRunQuery(rs);
+                } catch (SQLException ex) {
+                    logger.log(Level.WARNING, "Error closing result set after looking up files of keyword hits", ex);
+                }
+            }
+        }
+        return files;
+    }
+}
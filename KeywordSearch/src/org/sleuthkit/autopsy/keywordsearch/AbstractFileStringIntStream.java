@@ -39,6 +39,7 @@ import org.sleuthkit.datamodel.TskCoreException;
 public class AbstractFileStringIntStream extends InputStream {
 
     private AbstractFile content;
+    private final UnallocBlockFilter blockFilter; //skips blocks of unallocated space without strings, or null
     private final byte[] oneCharBuf = new byte[1];
     private final StringExtract stringExtractor;
     private static final int FILE_BUF_SIZE = 1024 * 1024;
@@ -68,6 +69,7 @@ public class AbstractFileStringIntStream extends InputStream {
     public AbstractFileStringIntStream(AbstractFile content, List<SCRIPT> scripts, boolean extractUTF8, 
            boolean extractUTF16, Charset outCharset) {
         this.content = content;
+        this.blockFilter = UnallocBlockFilter.isSupported(content) ? new UnallocBlockFilter(content) : null;
         this.stringExtractor = new StringExtract();
         this.stringExtractor.setEnabledScripts(scripts);
         this.extractUTF8 = extractUTF8;
@@ -145,11 +147,16 @@ public class AbstractFileStringIntStream extends InputStream {
                     if (read == -1 || read == 0) {
                         fileEOF = true;
                     } else {
+                        final long bufFileOffset = fileReadOffset;
                         fileReadOffset += read;
                         if (fileReadOffset >= fileSize) {
                             fileEOF = true;
                         }
 
+                        if (blockFilter != null) {
+                            read = blockFilter.filter(fileReadBuff, read, bufFileOffset);
+                        }
+
                         //put converted string in convertBuff
                         convert(read);
                         convertBuffRemain = bytesInConvertBuff - convertBuffOffset;
@@ -196,6 +203,14 @@ public class AbstractFileStringIntStream extends InputStream {
         return bytesToUser;
     }
 
+    @Override
+    public void close() throws IOException {
+        if (blockFilter != null) {
+            blockFilter.logSkipped();
+        }
+        super.close();
+    }
+
     /**
      * convert bytes in file buffer to string, and encode string in
      * convertBuffer
@@ -35,36 +35,49 @@ import org.sleuthkit.datamodel.TskException;
  * 
  * For other script/languages support and better encoding detection use AbstractFileStringIntStream streaming class,
  * which wraps around StringExtract extractor.
+ * 
+ * The content is read in large blocks and scanned with a byte table, runs of 
+ * printable chars are copied in bulk. The extracted strings are printable ASCII,
+ * and are copied as is to the user buffer, without intermediate String objects.
  */
 public class AbstractFileStringStream extends InputStream {
 
     //args
     private AbstractFile content;
-    private Charset outputCharset;
     //internal data
+    private final UnallocBlockFilter blockFilter; //skips blocks of unallocated space without strings, or null
     private long contentOffset = 0; //offset in fscontent read into curReadBuf
-    private static final int READ_BUF_SIZE = 256;
-    private static final byte[] curReadBuf = new byte[READ_BUF_SIZE];
+    private static final int READ_BUF_SIZE = 1024 * 1024;
+    private final byte[] curReadBuf = new byte[READ_BUF_SIZE];
     private int bytesInReadBuf = 0;
     private int readBufOffset = 0; //offset in read buf processed
-    private StringBuilder curString = new StringBuilder();
-    private int curStringLen = 0;
-    private StringBuilder tempString = new StringBuilder();
+    private int curStringLen = 0; //chars of strings copied to user buffer in current read()
+    private byte[] tempString = new byte[TEMP_BUF_SIZE];
     private int tempStringLen = 0;
+    private static final int TEMP_BUF_SIZE = 1024;
     private boolean isEOF = false;
     private boolean stringAtTempBoundary = false; //if temp has part of string that didn't make it in previous read()
     private boolean stringAtBufBoundary = false; //if read buffer has string being processed, continue as string from prev read() in next read()
     private boolean inString = false; //if current temp has min chars required
-    private static final byte[] oneCharBuf = new byte[1];
+    private final byte[] oneCharBuf = new byte[1];
     private final int MIN_PRINTABLE_CHARS = 4; //num. of chars needed to qualify as a char string
-    private static final String NLS = Character.toString((char) 10); //new line
+    private static final byte NL = (byte) 10; //new line
+    private static final boolean[] PRINTABLE = new boolean[256]; //printable flag by byte value
     private static final Logger logger = Logger.getLogger(AbstractFileStringStream.class.getName());
 
+    static {
+        for (int i = 0; i < PRINTABLE.length; ++i) {
+            //byte is cast to char as signed, only 0-127 can be printable
+            PRINTABLE[i] = StringExtract.isPrintableAscii((char) (byte) i);
+        }
+    }
+
     /**
      * Construct new string stream from FsContent
      *
      * @param content to extract strings from
-     * @param outputCharset target encoding to index as
+     * @param outputCharset target encoding to index as, the strings are
+     * printable ASCII, so it needs to be ASCII compatible, e.g. UTF-8
      * @param preserveOnBuffBoundary whether to preserve or split string on a
      * buffer boundary. If false, will pack into read buffer up to max.
      * possible, potentially splitting a string. If false, the string will be
@@ -72,7 +85,7 @@ public class AbstractFileStringStream extends InputStream {
      */
     public AbstractFileStringStream(AbstractFile content, Charset outputCharset, boolean preserveOnBuffBoundary) {
         this.content = content;
-        this.outputCharset = outputCharset;
+        this.blockFilter = UnallocBlockFilter.isSupported(content) ? new UnallocBlockFilter(content) : null;
         //this.preserveOnBuffBoundary = preserveOnBuffBoundary;
         //logger.log(Level.INFO, "FILE: " + content.getParentPath() + "/" + content.getName());
     }
@@ -107,13 +120,12 @@ public class AbstractFileStringStream extends InputStream {
             return -1;
         }
 
+        curStringLen = 0;
 
         if (stringAtTempBoundary) {
-            //append entire temp string residual from previous read()
+            //append temp string residual from previous read()
             //because qualified string was broken down into 2 parts
-            appendResetTemp();
-
-            stringAtTempBoundary = false;
+            stringAtTempBoundary = appendResetTemp(b, off, len);
             //there could be more to this string in fscontent/buffer
         }
 
@@ -129,63 +141,57 @@ public class AbstractFileStringStream extends InputStream {
                     bytesInReadBuf = 0;
                     bytesInReadBuf = content.read(curReadBuf, contentOffset, READ_BUF_SIZE);
                 } catch (TskException ex) {
-                    if (curStringLen > 0 || tempStringLen >= MIN_PRINTABLE_CHARS) {
-                        appendResetTemp();
-                        //have some extracted string, return that, and fail next time
-                        isEOF = true;
-                        int copied = copyToReturn(b, off, len);
-                        return copied;
-                    } else {
-                        return -1; //EOF
-                    }
+                    return returnAtEOF(b, off, len);
                 }
                 if (bytesInReadBuf < 1) {
-                    if (curStringLen > 0 || tempStringLen >= MIN_PRINTABLE_CHARS) {
-                        appendResetTemp();
-                        //have some extracted string, return that, and fail next time
-                        isEOF = true;
-                        int copied = copyToReturn(b, off, len);
-                        return copied;
-                    } else {
-                        return -1; //EOF
-                    }
+                    return returnAtEOF(b, off, len);
                 }
+                final long bufFileOffset = contentOffset;
                 //increment content offset for next read
                 contentOffset += bytesInReadBuf;
+                if (blockFilter != null) {
+                    bytesInReadBuf = blockFilter.filter(curReadBuf, bytesInReadBuf, bufFileOffset);
+                }
                 //reset read buf position
                 readBufOffset = 0;
             }
-            //get char from cur read buf
-            char c = (char) curReadBuf[readBufOffset++];
-            if (c == 0 && singleConsecZero == false) {
-                //preserve the current sequence if max consec. 1 zero char 
-                singleConsecZero = true;
-            } else {
-                singleConsecZero = false;
+
+            //copy run of printable chars in cur read buf, up to the user buffer size
+            final int runMax = Math.min(bytesInReadBuf, readBufOffset + len - newCurLen);
+            int runEnd = readBufOffset;
+            while (runEnd < runMax && PRINTABLE[curReadBuf[runEnd] & 0xFF]) {
+                ++runEnd;
             }
-            if (StringExtract.isPrintableAscii(c)) {
-                tempString.append(c);
-                ++tempStringLen;
+            if (runEnd > readBufOffset) {
+                appendTemp(curReadBuf, readBufOffset, runEnd - readBufOffset);
+                readBufOffset = runEnd;
+                singleConsecZero = false;
                 if (tempStringLen >= MIN_PRINTABLE_CHARS) {
                     inString = true;
                 }
-
                 //boundary case when temp has still chars - handled after the loop
-            } else if (!singleConsecZero) {
+                newCurLen = curStringLen + tempStringLen;
+                continue;
+            }
+
+            //non-printable char
+            final byte c = curReadBuf[readBufOffset++];
+            if (c == 0 && singleConsecZero == false) {
+                //preserve the current sequence if max consec. 1 zero char 
+                singleConsecZero = true;
+            } else {
+                singleConsecZero = false;
                 //break the string, clear temp
                 if (tempStringLen >= MIN_PRINTABLE_CHARS
                         || stringAtBufBoundary) {
                     //append entire temp string with new line
-                    tempString.append(NLS);
-                    ++tempStringLen;
-
-                    curString.append(tempString);
+                    System.arraycopy(tempString, 0, b, off + curStringLen, tempStringLen);
                     curStringLen += tempStringLen;
+                    b[off + curStringLen++] = NL;
 
                     stringAtBufBoundary = false;
                 }
                 //reset temp
-                tempString = new StringBuilder();
                 tempStringLen = 0;
             }
 
@@ -203,69 +209,56 @@ public class AbstractFileStringStream extends InputStream {
         //we might need to break up temp into 2 parts for next read() call
         //consume as many as possible to fill entire user buffer
         if (tempStringLen >= MIN_PRINTABLE_CHARS) {
-            if (newCurLen > len) {
-                int appendChars = len - curStringLen;
-                //save part for next user read(), need to break up temp string
-                //do not append new line
-                String toAppend = tempString.substring(0, appendChars);
-                String newTemp = tempString.substring(appendChars);
-
-                curString.append(toAppend);
-                curStringLen += appendChars;
-
-                tempString = new StringBuilder(newTemp);
-                tempStringLen = newTemp.length();
-
-                stringAtTempBoundary = true;
-
-            } else {
-                //append entire temp
-                curString.append(tempString);
-                curStringLen += tempStringLen;
-
-                //reset temp
-                tempString = new StringBuilder();
-                tempStringLen = 0;
-
-            }
+            //save part that does not fit for next user read(), do not append new line
+            stringAtTempBoundary = appendResetTemp(b, off, len);
         } else {
             //if temp has a few chars, not qualified as string for now, 
             //will be processed during next read() call
         }
 
-        //copy current strings to user
-        final int copied = copyToReturn(b, off, len);
-        //there may be still chars in read buffer or  tempString, for next read()
+        //there may be still chars in read buffer or tempString, for next read()
+        return curStringLen;
+    }
 
-        return copied;
+    //no more content, return the strings extracted so far, and fail next time
+    private int returnAtEOF(byte[] b, int off, int len) {
+        if (curStringLen > 0 || tempStringLen >= MIN_PRINTABLE_CHARS) {
+            appendResetTemp(b, off, len);
+            isEOF = true;
+            return curStringLen;
+        } else {
+            return -1; //EOF
+        }
     }
 
-    //append temp buffer to cur string buffer and reset temp, if enough chars
+    //append temp buffer to user buffer and reset temp, if enough chars
     //does not append new line
-    private void appendResetTemp() {
-        if (tempStringLen >= MIN_PRINTABLE_CHARS) {
-            curString.append(tempString);
-            curStringLen += tempStringLen;
-            tempString = new StringBuilder();
-            tempStringLen = 0;
+    //returns true if temp has chars left that did not fit in the user buffer
+    private boolean appendResetTemp(byte[] b, int off, int len) {
+        if (tempStringLen < MIN_PRINTABLE_CHARS) {
+            return false;
+        }
+        final int appendChars = Math.min(tempStringLen, len - curStringLen);
+        System.arraycopy(tempString, 0, b, off + curStringLen, appendChars);
+        curStringLen += appendChars;
+        tempStringLen -= appendChars;
+        if (tempStringLen > 0) {
+            System.arraycopy(tempString, appendChars, tempString, 0, tempStringLen);
+            return true;
         }
+        return false;
     }
 
-    //copy currently extracted string to user buffer
-    //and reset for next read() call
-    private int copyToReturn(byte[] b, int off, long len) {
-
-        final String curStringS = curString.toString();
-        //logger.log(Level.INFO, curStringS);
-        byte[] stringBytes = curStringS.getBytes(outputCharset);
-        System.arraycopy(stringBytes, 0, b, off, Math.min(curStringLen, (int) len));
-        //logger.log(Level.INFO, curStringS);
-        //copied all string, reset
-        curString = new StringBuilder();
-        int ret = curStringLen;
-        curStringLen = 0;
-        return ret;
-
+    //append chars to temp buffer, growing it as needed
+    private void appendTemp(byte[] src, int srcOff, int srcLen) {
+        final int newLen = tempStringLen + srcLen;
+        if (newLen > tempString.length) {
+            byte[] newTemp = new byte[Math.max(newLen, tempString.length * 2)];
+            System.arraycopy(tempString, 0, newTemp, 0, tempStringLen);
+            tempString = newTemp;
+        }
+        System.arraycopy(src, srcOff, tempString, tempStringLen, srcLen);
+        tempStringLen = newLen;
     }
 
     @Override
@@ -279,6 +272,14 @@ public class AbstractFileStringStream extends InputStream {
 
     }
 
+    @Override
+    public void close() throws IOException {
+        if (blockFilter != null) {
+            blockFilter.logSkipped();
+        }
+        super.close();
+    }
+
     @Override
     public int available() throws IOException {
         //we don't know how many bytes in curReadBuf may end up as strings
@@ -291,4 +292,4 @@ public class AbstractFileStringStream extends InputStream {
         //but it could be more efficient
         return super.skip(n);
     }
-}
\ No newline at end of file
+}
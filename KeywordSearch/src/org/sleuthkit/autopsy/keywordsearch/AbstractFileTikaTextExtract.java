@@ -137,27 +137,31 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
         final InputStream stream = new ReadContentInputStream(sourceFile);
         try {
             Metadata meta = new Metadata();
-            //Tika parse request with timeout
-            Tika tika = new Tika(); //new tika instance for every file, to workaround tika memory issues
-            ParseRequestTask parseTask = new ParseRequestTask(tika, stream, meta, sourceFile);
-            final Future<?> future = tikaParseExecutor.submit(parseTask);
-            try {
-                future.get(Ingester.getTimeout(sourceFile.getSize()), TimeUnit.SECONDS);
-            } catch (TimeoutException te) {
-                tika = null;
-                final String msg = "Tika parse timeout for content: " + sourceFile.getId() + ", " + sourceFile.getName();
-                KeywordSearch.getTikaLogger().log(Level.WARNING, msg, te);
-                logger.log(Level.WARNING, msg);
-                throw new IngesterException(msg);
-            } catch (Exception ex) {
-                tika = null;
-                final String msg = "Unexpected exception from Tika parse task execution for file: " + sourceFile.getId() + ", " + sourceFile.getName();
-                KeywordSearch.getTikaLogger().log(Level.WARNING, msg, ex);
-                logger.log(Level.WARNING, msg);
-                throw new IngesterException(msg);
-            }
+            //parse in a Tika worker process, isolated from the application, or in process if no worker can be used
+            reader = TikaWorkerPool.getDefault().parse(stream, meta, Ingester.getTimeout(sourceFile.getSize()), sourceFile);
+            if (reader == null) {
+                //Tika parse request with timeout
+                Tika tika = new Tika(); //new tika instance for every file, to workaround tika memory issues
+                ParseRequestTask parseTask = new ParseRequestTask(tika, stream, meta, sourceFile);
+                final Future<?> future = tikaParseExecutor.submit(parseTask);
+                try {
+                    future.get(Ingester.getTimeout(sourceFile.getSize()), TimeUnit.SECONDS);
+                } catch (TimeoutException te) {
+                    tika = null;
+                    final String msg = "Tika parse timeout for content: " + sourceFile.getId() + ", " + sourceFile.getName();
+                    KeywordSearch.getTikaLogger().log(Level.WARNING, msg, te);
+                    logger.log(Level.WARNING, msg);
+                    throw new IngesterException(msg);
+                } catch (Exception ex) {
+                    tika = null;
+                    final String msg = "Unexpected exception from Tika parse task execution for file: " + sourceFile.getId() + ", " + sourceFile.getName();
+                    KeywordSearch.getTikaLogger().log(Level.WARNING, msg, ex);
+                    logger.log(Level.WARNING, msg);
+                    throw new IngesterException(msg);
+                }
 
-            reader = parseTask.getReader();
+                reader = parseTask.getReader();
+            }
 
             if (reader == null) {
                 //likely due to exception in parse()
@@ -255,11 +259,7 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
             logger.log(Level.WARNING, msg, ex);
             success = false;
         } finally {
-            try {
-                stream.close();
-            } catch (IOException ex) {
-                logger.log(Level.WARNING, "Unable to close Tika content stream from " + sourceFile.getId(), ex);
-            }
+            //close the reader first, a Tika worker may still be reading the content stream
             try {
                 if (reader != null) {
                     reader.close();
@@ -267,6 +267,11 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
             } catch (IOException ex) {
                 logger.log(Level.WARNING, "Unable to close content reader from " + sourceFile.getId(), ex);
             }
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Unable to close Tika content stream from " + sourceFile.getId(), ex);
+            }
         }
 
         //after all chunks, ingest the parent file without content itself, and store numChunks
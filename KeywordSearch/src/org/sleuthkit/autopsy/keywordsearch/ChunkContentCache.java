@@ -0,0 +1,167 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * Bounded LRU cache of extracted text of content chunks, as stored in Solr,
+ * keyed by object id and chunk id. Neighbor chunks of the chunk being read
+ * can be prefetched in the background, so paging through the text of a file
+ * is served from memory.
+ *
+ * The cache is cleared when the case is closed.
+ */
+class ChunkContentCache {
+
+    private static final Logger logger = Logger.getLogger(ChunkContentCache.class.getName());
+    //max total chars of the cached chunks
+    private static final long MAX_CACHED_CHARS = 16L * 1024 * 1024;
+    private static ChunkContentCache instance;
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true);
+    private long cachedChars = 0;
+    //changes when the cache is cleared, so late prefetches of a closed case are dropped
+    private int epoch = 0;
+    //chunks queued or being fetched in the background
+    private final Set<String> pending = new HashSet<String>();
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Keyword search chunk prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    private ChunkContentCache() {
+    }
+
+    static synchronized ChunkContentCache getDefault() {
+        if (instance == null) {
+            instance = new ChunkContentCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Drop all cached chunks, e.g. when the case is closed
+     */
+    synchronized void clear() {
+        cache.clear();
+        pending.clear();
+        cachedChars = 0;
+        ++epoch;
+    }
+
+    /**
+     * Get the extracted text of the content chunk, from the cache or from
+     * Solr
+     *
+     * @param content content to get the text of
+     * @param chunkId chunk id, or 0 if the content has no chunks
+     * @return the chunk text, or null if it could not be retrieved
+     * @throws NoOpenCoreException
+     */
+    String getContent(Content content, int chunkId) throws NoOpenCoreException {
+        final String key = getKey(content.getId(), chunkId);
+        final int startEpoch;
+        synchronized (this) {
+            final String cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            startEpoch = epoch;
+        }
+        final String text = KeywordSearch.getServer().getSolrContent(content, chunkId);
+        put(key, text, startEpoch);
+        return text;
+    }
+
+    /**
+     * Fetch the chunks before and after the chunk in the background, if not
+     * cached yet
+     *
+     * @param content content being read
+     * @param chunkId chunk being read
+     * @param numChunks number of chunks of the content
+     */
+    void prefetch(final Content content, int chunkId, int numChunks) {
+        final int[] neighbors = {chunkId + 1, chunkId - 1};
+        for (final int neighbor : neighbors) {
+            if (neighbor < 1 || neighbor > numChunks) {
+                continue;
+            }
+            final String key = getKey(content.getId(), neighbor);
+            final int startEpoch;
+            synchronized (this) {
+                if (cache.containsKey(key) || pending.contains(key)) {
+                    continue;
+                }
+                pending.add(key);
+                startEpoch = epoch;
+            }
+            prefetchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        put(key, KeywordSearch.getServer().getSolrContent(content, neighbor), startEpoch);
+                    } catch (NoOpenCoreException ex) {
+                        logger.log(Level.INFO, "Could not prefetch chunk " + key + ", no open core");
+                    } finally {
+                        synchronized (ChunkContentCache.this) {
+                            pending.remove(key);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void put(String key, String text, int startEpoch) {
+        if (text == null || text.length() > MAX_CACHED_CHARS || startEpoch != epoch) {
+            return;
+        }
+        final String old = cache.put(key, text);
+        if (old != null) {
+            cachedChars -= old.length();
+        }
+        cachedChars += text.length();
+        //evict least recently used chunks over the limit
+        Iterator<Map.Entry<String, String>> it = cache.entrySet().iterator();
+        while (cachedChars > MAX_CACHED_CHARS && it.hasNext()) {
+            cachedChars -= it.next().getValue().length();
+            it.remove();
+        }
+    }
+
+    private static String getKey(long contentId, int chunkId) {
+        return Server.getChunkIdString(contentId, chunkId);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2011 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Index of the digests of the chunk text indexed in the current case, used to
+ * index the text of identical chunks (e.g. repeated padding in unallocated
+ * space, shared file headers) only once. A chunk with the same text as a chunk
+ * indexed before is added as a reference to that chunk, see
+ * Server.Schema.CHUNK_REF, and its hits are reported with the hits of the
+ * referenced chunk.
+ *
+ * Digests are kept per image, so a chunk only references a chunk of the same
+ * image: the image filters of a query select both the chunk and the chunks
+ * referencing it, and with an index shard per image both are in the same shard.
+ *
+ * The index is bounded, the least recently seen digests are dropped first, so
+ * a dropped chunk text is indexed again the next time it is seen. The index is
+ * cleared when the case is closed.
+ */
+class ChunkDigestIndex {
+
+    private static final Logger logger = Logger.getLogger(ChunkDigestIndex.class.getName());
+    //about 100 bytes per digest
+    private static final int MAX_DIGESTS = 200000;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static ChunkDigestIndex instance;
+    private final MessageDigest messageDigest;
+    private final LinkedHashMap<Digest, String> chunks = new LinkedHashMap<Digest, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Digest, String> eldest) {
+            return size() > MAX_DIGESTS;
+        }
+    };
+
+    private ChunkDigestIndex() {
+        MessageDigest md = null;
+        try {
+            md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            logger.log(Level.WARNING, "Chunk digest algorithm not available, identical chunks will be indexed again", ex);
+        }
+        this.messageDigest = md;
+    }
+
+    static synchronized ChunkDigestIndex getDefault() {
+        if (instance == null) {
+            instance = new ChunkDigestIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Drop all digests, e.g. when the case is closed
+     */
+    synchronized void clear() {
+        chunks.clear();
+    }
+
+    /**
+     * Compute the digest of the chunk text
+     *
+     * @param buf buffer with the encoded chunk text
+     * @param len number of bytes of the text in the buffer
+     * @param imageId id of the image of the chunk
+     * @return the digest, or null if it cannot be computed
+     */
+    synchronized Digest getDigest(byte[] buf, int len, long imageId) {
+        if (messageDigest == null) {
+            return null;
+        }
+        messageDigest.update(buf, 0, len);
+        return new Digest(messageDigest.digest(), len, imageId);
+    }
+
+    /**
+     * Get the chunk indexed before with the same text
+     *
+     * @param digest digest of the chunk text
+     * @return the chunk id string, or null if not indexed before
+     */
+    synchronized String getChunk(Digest digest) {
+        return chunks.get(digest);
+    }
+
+    /**
+     * Record the chunk with the text indexed
+     *
+     * @param digest digest of the chunk text
+     * @param chunkIdStr the chunk id string, as stored in Solr
+     */
+    synchronized void addChunk(Digest digest, String chunkIdStr) {
+        chunks.put(digest, chunkIdStr);
+    }
+
+    /**
+     * Digest of a chunk text, the first 128 bits of the message digest and
+     * the text length, and the image of the chunk
+     */
+    static class Digest {
+
+        private final long high;
+        private final long low;
+        private final int len;
+        private final long imageId;
+
+        private Digest(byte[] md, int len, long imageId) {
+            long h = 0;
+            long l = 0;
+            for (int i = 0; i < 8; ++i) {
+                h = (h << 8) | (md[i] & 0xFF);
+                l = (l << 8) | (md[i + 8] & 0xFF);
+            }
+            this.high = h;
+            this.low = l;
+            this.len = len;
+            this.imageId = imageId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Digest)) {
+                return false;
+            }
+            final Digest other = (Digest) obj;
+            return high == other.high && low == other.low && len == other.len
+                    && imageId == other.imageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (low ^ (low >>> 32));
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Matches a fixed set of keywords against chunk text at index time, in a
+ * single pass over the text.
+ *
+ * Literal keywords are compiled into an Aho-Corasick automaton, matched case
+ * insensitively and only on word boundaries, to approximate the phrase query
+ * run against the default Solr field.
+ *
+ * Regular expressions are matched against whitespace separated tokens of the
+ * chunk, the same terms the content_ws field is built from, using the same
+ * case insensitive, whole-term semantics as the Solr terms component regex
+ * query.
+ *
+ * The matcher is immutable once built and can be shared between threads.
+ */
+final class ChunkKeywordMatcher {
+
+    private static final Logger logger = Logger.getLogger(ChunkKeywordMatcher.class.getName());
+    //same as the max token length of Lucene whitespace tokenizer, longer tokens are split
+    private static final int MAX_TOKEN_LENGTH = 255;
+    private static final char HIT_MARKER = '«';
+    private static final int ROOT = 0;
+    private static final int NO_STATE = -1;
+    //literal automaton
+    private final List<Keyword> literals = new ArrayList<Keyword>();
+    private final List<Integer> literalLengths = new ArrayList<Integer>();
+    private int[] rootGoto;
+    private char[][] gotoChars;
+    private int[][] gotoStates;
+    private int[] fail;
+    private int[][] outputs;
+    //regex matchers
+    private final List<Keyword> regexes = new ArrayList<Keyword>();
+    private final List<Pattern> regexPatterns = new ArrayList<Pattern>();
+
+    /**
+     * Represents a single keyword hit found in the chunk text
+     */
+    static class Hit {
+
+        private final Keyword keyword;
+        private final String term;
+        private final String snippet;
+
+        Hit(Keyword keyword, String term, String snippet) {
+            this.keyword = keyword;
+            this.term = term;
+            this.snippet = snippet;
+        }
+
+        /**
+         * @return the keyword that matched
+         */
+        Keyword getKeyword() {
+            return keyword;
+        }
+
+        /**
+         * @return the keyword query for literal keyword hits, the matching
+         * term for regular expression hits
+         */
+        String getTerm() {
+            return term;
+        }
+
+        /**
+         * @return hit preview context, with the hit marked
+         */
+        String getSnippet() {
+            return snippet;
+        }
+    }
+
+    /**
+     * Create the matcher for the keywords
+     *
+     * @param keywords literal and regular expression keywords to match,
+     * invalid regular expressions are skipped
+     */
+    ChunkKeywordMatcher(Collection<Keyword> keywords) {
+        for (Keyword keyword : keywords) {
+            final String query = keyword.getQuery();
+            if (query == null || query.trim().equals("")) {
+                continue;
+            }
+            if (keyword.isLiteral()) {
+                literals.add(keyword);
+            } else {
+                try {
+                    regexPatterns.add(Pattern.compile(query, Pattern.CASE_INSENSITIVE));
+                    regexes.add(keyword);
+                } catch (PatternSyntaxException ex) {
+                    logger.log(Level.WARNING, "Skipping invalid regular expression for index time matching: " + query, ex);
+                }
+            }
+        }
+        buildAutomaton();
+    }
+
+    /**
+     * @return true if there are no keywords to match
+     */
+    boolean isEmpty() {
+        return literals.isEmpty() && regexes.isEmpty();
+    }
+
+    /**
+     * Find keyword hits in the chunk text. Every matching literal keyword and
+     * every distinct regular expression term is reported once per chunk, with
+     * the preview of its first occurrence.
+     *
+     * @param text the chunk text
+     * @return the hits found, empty list if none
+     */
+    List<Hit> match(String text) {
+        List<Hit> hits = new ArrayList<Hit>();
+        if (text == null || text.isEmpty()) {
+            return hits;
+        }
+        if (!literals.isEmpty()) {
+            matchLiterals(text, hits);
+        }
+        if (!regexes.isEmpty()) {
+            matchRegexes(text, hits);
+        }
+        return hits;
+    }
+
+    private void matchLiterals(String text, List<Hit> hits) {
+        final boolean[] found = new boolean[literals.size()];
+        int numFound = 0;
+        final int length = text.length();
+        int state = ROOT;
+        for (int i = 0; i < length && numFound < found.length; ++i) {
+            final char c = Character.toLowerCase(text.charAt(i));
+            int next = nextState(state, c);
+            while (next == NO_STATE) {
+                state = fail[state];
+                next = nextState(state, c);
+            }
+            state = next;
+
+            for (int pattern : outputs[state]) {
+                if (found[pattern]) {
+                    continue;
+                }
+                final int end = i + 1;
+                final int start = end - literalLengths.get(pattern);
+                if (isWordBoundary(text, start - 1) && isWordBoundary(text, end)) {
+                    found[pattern] = true;
+                    ++numFound;
+                    final Keyword keyword = literals.get(pattern);
+                    hits.add(new Hit(keyword, keyword.getQuery(), makeSnippet(text, start, end)));
+                }
+            }
+        }
+    }
+
+    private void matchRegexes(String text, List<Hit> hits) {
+        final Set<String> foundTerms = new HashSet<String>();
+        final int length = text.length();
+        int start = 0;
+        while (start < length) {
+            //skip whitespace
+            while (start < length && Character.isWhitespace(text.charAt(start))) {
+                ++start;
+            }
+            int end = start;
+            while (end < length && end - start < MAX_TOKEN_LENGTH
+                    && !Character.isWhitespace(text.charAt(end))) {
+                ++end;
+            }
+            if (end > start) {
+                final String token = text.substring(start, end);
+                for (int i = 0; i < regexPatterns.size(); ++i) {
+                    final Keyword keyword = regexes.get(i);
+                    final String termKey = i + ":" + token;
+                    if (!foundTerms.contains(termKey)
+                            && regexPatterns.get(i).matcher(token).matches()) {
+                        foundTerms.add(termKey);
+                        hits.add(new Hit(keyword, token, makeSnippet(text, start, end)));
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    private static boolean isWordBoundary(String text, int index) {
+        if (index < 0 || index >= text.length()) {
+            return true;
+        }
+        return !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    /**
+     * Make a preview of the hit similar to the one produced by the Solr
+     * highlighter for the ingest searcher
+     */
+    static String makeSnippet(String text, int start, int end) {
+        final int context = Math.max(0, (LuceneQuery.SNIPPET_LENGTH - (end - start)) / 2);
+        final int from = Math.max(0, start - context);
+        final int to = Math.min(text.length(), end + context);
+        StringBuilder sb = new StringBuilder(to - from + 2);
+        sb.append(text, from, start).append(HIT_MARKER);
+        sb.append(text, start, end).append(HIT_MARKER);
+        sb.append(text, end, to);
+        return sb.toString().trim();
+    }
+
+    private int nextState(int state, char c) {
+        if (state == ROOT) {
+            return rootGoto[c];
+        }
+        final char[] chars = gotoChars[state];
+        for (int i = 0; i < chars.length; ++i) {
+            if (chars[i] == c) {
+                return gotoStates[state][i];
+            }
+        }
+        return NO_STATE;
+    }
+
+    private void buildAutomaton() {
+        //build the trie, growing per-state transition lists
+        List<StringBuilder> trieChars = new ArrayList<StringBuilder>();
+        List<List<Integer>> trieStates = new ArrayList<List<Integer>>();
+        List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+        trieChars.add(new StringBuilder());
+        trieStates.add(new ArrayList<Integer>());
+        trieOutputs.add(new ArrayList<Integer>());
+
+        for (int p = 0; p < literals.size(); ++p) {
+            final String literal = literals.get(p).getQuery();
+            int state = ROOT;
+            int length = 0;
+            for (int i = 0; i < literal.length(); ++i) {
+                final char c = Character.toLowerCase(literal.charAt(i));
+                final int idx = trieChars.get(state).indexOf(String.valueOf(c));
+                if (idx != -1) {
+                    state = trieStates.get(state).get(idx);
+                } else {
+                    final int newState = trieChars.size();
+                    trieChars.add(new StringBuilder());
+                    trieStates.add(new ArrayList<Integer>());
+                    trieOutputs.add(new ArrayList<Integer>());
+                    trieChars.get(state).append(c);
+                    trieStates.get(state).add(newState);
+                    state = newState;
+                }
+                ++length;
+            }
+            trieOutputs.get(state).add(p);
+            literalLengths.add(length);
+        }
+
+        final int numStates = trieChars.size();
+        gotoChars = new char[numStates][];
+        gotoStates = new int[numStates][];
+        for (int s = 0; s < numStates; ++s) {
+            gotoChars[s] = trieChars.get(s).toString().toCharArray();
+            List<Integer> targets = trieStates.get(s);
+            gotoStates[s] = new int[targets.size()];
+            for (int i = 0; i < gotoStates[s].length; ++i) {
+                gotoStates[s][i] = targets.get(i);
+            }
+        }
+
+        //root has a full transition table, unknown chars loop back to root
+        rootGoto = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(rootGoto, ROOT);
+        for (int i = 0; i < gotoChars[ROOT].length; ++i) {
+            rootGoto[gotoChars[ROOT][i]] = gotoStates[ROOT][i];
+        }
+
+        //failure links and merged outputs, breadth first
+        fail = new int[numStates];
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int child : gotoStates[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.removeFirst();
+            for (int i = 0; i < gotoChars[state].length; ++i) {
+                final char c = gotoChars[state][i];
+                final int child = gotoStates[state][i];
+                int f = fail[state];
+                while (nextState(f, c) == NO_STATE) {
+                    f = fail[f];
+                }
+                fail[child] = nextState(f, c);
+                trieOutputs.get(child).addAll(trieOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        outputs = new int[numStates][];
+        for (int s = 0; s < numStates; ++s) {
+            List<Integer> out = trieOutputs.get(s);
+            outputs[s] = new int[out.size()];
+            for (int i = 0; i < outputs[s].length; ++i) {
+                outputs[s][i] = out.get(i);
+            }
+        }
+    }
+}
@@ -163,7 +163,7 @@ public class ExtractedContentViewer implements DataContentViewer {
             @Override
             public String getMarkup() {
                 try {
-                    return getSolrContent(selectedNode, currentPage, hasChunks);
+                    return getSolrContent(selectedNode, currentPage, hasChunks, numPages);
                 } catch (SolrServerException ex) {
                     logger.log(Level.WARNING, "Couldn't get extracted content.", ex);
                     return "";
@@ -392,10 +392,11 @@ public class ExtractedContentViewer implements DataContentViewer {
      * @param currentPage currently used page
      * @param hasChunks true if the content behind the node has multiple chunks.
      * This means we need to address the content pages specially.
+     * @param numPages number of pages of the content
      * @return the extracted content
      * @throws SolrServerException if something goes wrong
      */
-    private String getSolrContent(Node node, int currentPage, boolean hasChunks) throws SolrServerException {
+    private String getSolrContent(Node node, int currentPage, boolean hasChunks, int numPages) throws SolrServerException {
         Content contentObj = node.getLookup().lookup(Content.class);
 
         final Server solrServer = KeywordSearch.getServer();
@@ -416,7 +417,13 @@ public class ExtractedContentViewer implements DataContentViewer {
 
         //not cached
         try {
-            curContent = EscapeUtil.escapeHtml(solrServer.getSolrContent(contentObj, chunkId)).trim();
+            final ChunkContentCache contentCache = ChunkContentCache.getDefault();
+            final String text = contentCache.getContent(contentObj, chunkId);
+            if (hasChunks) {
+                //the next or previous page is likely to be shown next
+                contentCache.prefetch(contentObj, chunkId, numPages);
+            }
+            curContent = EscapeUtil.escapeHtml(text).trim();
             StringBuilder sb = new StringBuilder(curContent.length() + 20);
             sb.append("<pre>").append(curContent).append("</pre>");
             curContent = sb.toString();
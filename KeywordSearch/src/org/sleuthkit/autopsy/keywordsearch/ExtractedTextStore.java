@@ -0,0 +1,254 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2011 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Append-only store of the extracted text of the indexed files and chunks,
+ * compressed, kept in the case directory next to the index. Solr indexes the
+ * text in the content_indexed field without storing it, which keeps the index
+ * a fraction of its size, and the text is read from the store to show it and
+ * to make hit previews. Documents of indexes from before the store keep their
+ * text stored in the content field, and are still read and highlighted from
+ * Solr.
+ *
+ * The data file holds the deflated UTF-8 text records, the index file holds a
+ * fixed size entry per record: object id, chunk id, record offset and length.
+ * A later record for the same object and chunk replaces the earlier one. The
+ * entries are loaded in memory when the store is opened, an incomplete entry
+ * or record at the end, e.g. after a crash, is ignored.
+ */
+class ExtractedTextStore {
+
+    private static final Logger logger = Logger.getLogger(ExtractedTextStore.class.getName());
+    static final String DATA_FILE = "text.dat";
+    static final String INDEX_FILE = "text.idx";
+    //object id, chunk id, offset, length
+    private static final int ENTRY_SIZE = 8 + 4 + 8 + 4;
+    private static final Charset TEXT_CHARSET = Server.DEFAULT_INDEXED_TEXT_CHARSET;
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final Map<TextKey, TextLocation> locations = new HashMap<TextKey, TextLocation>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final byte[] codecBuf = new byte[64 * 1024];
+    private final ByteBuffer entryBuf = ByteBuffer.allocate(ENTRY_SIZE);
+
+    private ExtractedTextStore(RandomAccessFile dataFile, RandomAccessFile indexFile) {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Open the store in the directory, creating it if needed
+     *
+     * @param dir directory of the store files
+     * @return the open store
+     * @throws IOException if the store files could not be opened
+     */
+    static ExtractedTextStore open(File dir) throws IOException {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        final RandomAccessFile dataFile = new RandomAccessFile(new File(dir, DATA_FILE), "rw");
+        RandomAccessFile indexFile = null;
+        try {
+            indexFile = new RandomAccessFile(new File(dir, INDEX_FILE), "rw");
+            final ExtractedTextStore store = new ExtractedTextStore(dataFile, indexFile);
+            store.loadIndex();
+            return store;
+        } catch (IOException ex) {
+            dataFile.close();
+            if (indexFile != null) {
+                indexFile.close();
+            }
+            throw ex;
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        final long dataLength = dataFile.length();
+        final long numEntries = indexFile.length() / ENTRY_SIZE;
+        final byte[] entries = new byte[ENTRY_SIZE * 1024];
+        long validEntries = 0;
+        indexFile.seek(0);
+        for (long read = 0; read < numEntries;) {
+            final int toRead = (int) Math.min(1024, numEntries - read);
+            indexFile.readFully(entries, 0, toRead * ENTRY_SIZE);
+            final ByteBuffer bb = ByteBuffer.wrap(entries, 0, toRead * ENTRY_SIZE);
+            for (int i = 0; i < toRead; ++i) {
+                final long objectId = bb.getLong();
+                final int chunkId = bb.getInt();
+                final long offset = bb.getLong();
+                final int length = bb.getInt();
+                if (offset < 0 || length < 0 || offset + length > dataLength) {
+                    //record not fully written
+                    break;
+                }
+                locations.put(new TextKey(objectId, chunkId), new TextLocation(offset, length));
+                ++validEntries;
+            }
+            read += toRead;
+            if (validEntries < read) {
+                break;
+            }
+        }
+        //drop incomplete entries, new entries are appended after the valid ones
+        indexFile.setLength(validEntries * ENTRY_SIZE);
+        logger.log(Level.INFO, "Opened extracted text store with " + locations.size() + " texts");
+    }
+
+    /**
+     * Add the text of the object chunk
+     *
+     * @param objectId id of the file
+     * @param chunkId id of the chunk, or 0 if the file is not chunked
+     * @param text the extracted text
+     * @throws IOException if the text could not be written
+     */
+    synchronized void put(long objectId, int chunkId, String text) throws IOException {
+        final byte[] compressed = compress(text.getBytes(TEXT_CHARSET));
+        final long offset = dataFile.length();
+        dataFile.seek(offset);
+        dataFile.write(compressed);
+
+        entryBuf.clear();
+        entryBuf.putLong(objectId).putInt(chunkId).putLong(offset).putInt(compressed.length);
+        indexFile.seek(indexFile.length());
+        indexFile.write(entryBuf.array());
+
+        locations.put(new TextKey(objectId, chunkId), new TextLocation(offset, compressed.length));
+    }
+
+    /**
+     * Get the text of the object chunk
+     *
+     * @param objectId id of the file
+     * @param chunkId id of the chunk, or 0 if the file is not chunked
+     * @return the text, or null if not in the store or it could not be read
+     */
+    synchronized String get(long objectId, int chunkId) {
+        final TextLocation location = locations.get(new TextKey(objectId, chunkId));
+        if (location == null) {
+            return null;
+        }
+        try {
+            final byte[] compressed = new byte[location.length];
+            dataFile.seek(location.offset);
+            dataFile.readFully(compressed);
+            return new String(decompress(compressed), TEXT_CHARSET);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read extracted text of object: " + objectId + ", chunk: " + chunkId, ex);
+            return null;
+        } catch (DataFormatException ex) {
+            logger.log(Level.WARNING, "Corrupt extracted text of object: " + objectId + ", chunk: " + chunkId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Close the store files
+     */
+    synchronized void close() {
+        try {
+            dataFile.close();
+            indexFile.close();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error closing extracted text store", ex);
+        }
+        deflater.end();
+        inflater.end();
+        locations.clear();
+    }
+
+    private byte[] compress(byte[] bytes) {
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 16);
+        while (!deflater.finished()) {
+            final int n = deflater.deflate(codecBuf);
+            out.write(codecBuf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+        while (!inflater.finished()) {
+            final int n = inflater.inflate(codecBuf);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated extracted text record");
+            }
+            out.write(codecBuf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static class TextKey {
+
+        private final long objectId;
+        private final int chunkId;
+
+        TextKey(long objectId, int chunkId) {
+            this.objectId = objectId;
+            this.chunkId = chunkId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TextKey)) {
+                return false;
+            }
+            final TextKey other = (TextKey) obj;
+            return objectId == other.objectId && chunkId == other.chunkId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (objectId ^ (objectId >>> 32)) * 31 + chunkId;
+        }
+    }
+
+    private static class TextLocation {
+
+        private final long offset;
+        private final int length;
+
+        TextLocation(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -20,12 +20,14 @@ package org.sleuthkit.autopsy.keywordsearch;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.EscapeUtil;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
@@ -64,6 +66,14 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
     private String originalQuery = null; //or original query if hits are not available
     private boolean inited = false;
     private static final boolean DEBUG = (Version.getBuildType() == Version.Type.DEVELOPMENT);
+    //hit offsets of recently shown pages, by page id and highlight query
+    private static final int MAX_CACHED_HIGHLIGHTS = 20;
+    private static final Map<String, PageHighlights> highlightsCache = new LinkedHashMap<String, PageHighlights>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageHighlights> eldest) {
+            return size() > MAX_CACHED_HIGHLIGHTS;
+        }
+    };
 
     HighlightedMatchesSource(Content content, String keywordHitQuery, boolean isRegex) {
         this.content = content;
@@ -309,9 +319,6 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
             highlightQuery = KeywordSearchUtil.escapeLuceneQuery(highlightQuery);
         }
 
-        SolrQuery q = new SolrQuery();
-        q.setShowDebugInfo(DEBUG); //debug
-
         String queryStr = null;
 
         if (isRegex) {
@@ -331,8 +338,6 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
             queryStr = KeywordSearchUtil.quoteQuery(highlightQuery);
         }
 
-        q.setQuery(queryStr);
-
         final long contentId = content.getId();
 
         String contentIdStr = Long.toString(contentId);
@@ -340,6 +345,62 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
             contentIdStr += "_" + Integer.toString(this.currentPage);
         }
 
+        //highlight the page once per query, and render the cached hits after
+        final String highlightsKey = contentIdStr + " " + highLightField + " " + queryStr;
+        PageHighlights highlights;
+        synchronized (highlightsCache) {
+            highlights = highlightsCache.get(highlightsKey);
+        }
+        if (highlights == null) {
+            try {
+                highlights = queryHighlights(queryStr, contentIdStr, highLightField);
+            } catch (NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Couldn't query markup for page: " + currentPage, ex);
+                return "";
+            } catch (KeywordSearchModuleException ex) {
+                logger.log(Level.WARNING, "Could not query markup for page: " + currentPage, ex);
+                return "";
+            }
+            synchronized (highlightsCache) {
+                highlightsCache.put(highlightsKey, highlights);
+            }
+        }
+
+        if (highlights == PageHighlights.NONE) {
+            return NO_MATCHES;
+        }
+        String highlightedContent = insertAnchors(highlights.render());
+        return "<html><pre>" + highlightedContent + "</pre></html>";
+    }
+
+    /**
+     * Highlight the whole page, in the page text from the text store, or with
+     * Solr for an index with the text stored in Solr
+     *
+     * @return the page text and hit offsets, or PageHighlights.NONE if
+     * nothing was highlighted
+     */
+    private PageHighlights queryHighlights(String queryStr, String contentIdStr, String highLightField) throws NoOpenCoreException, KeywordSearchModuleException {
+        String text = solrServer.getExtractedText(contentIdStr);
+        if (text == null) {
+            //the text of a chunk indexed as a reference is in the referenced chunk
+            final String refIdStr = LuceneQuery.queryReferencedChunks(Collections.singletonList(contentIdStr)).get(contentIdStr);
+            if (refIdStr != null) {
+                contentIdStr = refIdStr;
+                text = solrServer.getExtractedText(contentIdStr);
+            }
+        }
+        if (text != null) {
+            final List<int[]> hits = new TextHighlighter(queryStr, isRegex).findHits(text);
+            if (hits.isEmpty()) {
+                return PageHighlights.NONE;
+            }
+            return new PageHighlights(text, hits);
+        }
+
+        SolrQuery q = new SolrQuery();
+        q.setShowDebugInfo(DEBUG); //debug
+        q.setQuery(queryStr);
 
         final String filterQuery = Server.Schema.ID.toString() + ":" + contentIdStr;
         q.addFilterQuery(filterQuery);
@@ -358,31 +419,28 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
         //docs says makes sense for the original Highlighter only, but not really
         q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED);
 
-        try {
-            QueryResponse response = solrServer.query(q, METHOD.POST);
-            Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
-
-            Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
-            if (responseHighlightID == null) {
-                return NO_MATCHES;
-            }
-            List<String> contentHighlights = responseHighlightID.get(highLightField);
-            if (contentHighlights == null) {
-                return NO_MATCHES;
-            } else {
-                // extracted content (minus highlight tags) is HTML-escaped
-                String highlightedContent = contentHighlights.get(0).trim();
-                highlightedContent = insertAnchors(highlightedContent);
+        QueryResponse response = solrServer.query(q, METHOD.POST);
+        Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
 
+        Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
+        if (responseHighlightID == null) {
+            return PageHighlights.NONE;
+        }
+        List<String> contentHighlights = responseHighlightID.get(highLightField);
+        if (contentHighlights == null) {
+            return PageHighlights.NONE;
+        } else {
+            // extracted content (minus highlight tags) is HTML-escaped
+            return PageHighlights.fromHighlighted(contentHighlights.get(0));
+        }
+    }
 
-                return "<html><pre>" + highlightedContent + "</pre></html>";
-            }
-        } catch (NoOpenCoreException ex) {
-            logger.log(Level.WARNING, "Couldn't query markup for page: " + currentPage, ex);
-            return "";
-        } catch (KeywordSearchModuleException ex) {
-            logger.log(Level.WARNING, "Could not query markup for page: " + currentPage, ex);
-            return "";
+    /**
+     * Drop the cached page highlights, e.g. when the case is closed
+     */
+    static void clearHighlightsCache() {
+        synchronized (highlightsCache) {
+            highlightsCache.clear();
         }
     }
 
@@ -453,4 +511,64 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
     public HighlightLookup createInstance(Content c, String keywordHitQuery, boolean isRegex, String originalQuery) {
         return new HighlightedMatchesSource(c, keywordHitQuery, isRegex, originalQuery);
     }
-}
\ No newline at end of file
+
+    /**
+     * Text of a page and the offsets of its hits, found once per page and
+     * query, and rendered each time the page is shown
+     */
+    private static class PageHighlights {
+
+        //no hits in the page
+        static final PageHighlights NONE = new PageHighlights("", Collections.<int[]>emptyList());
+        private final String text;
+        //start and end offsets of the hits in the text, in text order
+        private final List<int[]> hits;
+
+        PageHighlights(String text, List<int[]> hits) {
+            this.text = text;
+            this.hits = hits;
+        }
+
+        /**
+         * Get the text and hit offsets from a page highlighted by Solr, for
+         * an index with the text stored in Solr
+         *
+         * @param highlighted HTML escaped page text with the hits tagged
+         */
+        static PageHighlights fromHighlighted(String highlighted) {
+            StringBuilder text = new StringBuilder(highlighted.length());
+            List<int[]> hits = new ArrayList<int[]>();
+            int offset = 0;
+            int pre;
+            while ((pre = highlighted.indexOf(HIGHLIGHT_PRE, offset)) >= 0) {
+                final int post = highlighted.indexOf(HIGHLIGHT_POST, pre + HIGHLIGHT_PRE.length());
+                if (post < 0) {
+                    break;
+                }
+                text.append(EscapeUtil.unEscapeHtml(highlighted.substring(offset, pre)));
+                final int hitStart = text.length();
+                text.append(EscapeUtil.unEscapeHtml(highlighted.substring(pre + HIGHLIGHT_PRE.length(), post)));
+                hits.add(new int[]{hitStart, text.length()});
+                offset = post + HIGHLIGHT_POST.length();
+            }
+            text.append(EscapeUtil.unEscapeHtml(highlighted.substring(offset)));
+            return new PageHighlights(text.toString(), hits);
+        }
+
+        /**
+         * @return the HTML escaped page text with the hits highlighted
+         */
+        String render() {
+            final int tagsLength = hits.size() * (HIGHLIGHT_PRE.length() + HIGHLIGHT_POST.length());
+            StringBuilder buf = new StringBuilder(text.length() + tagsLength);
+            int offset = 0;
+            for (int[] hit : hits) {
+                buf.append(EscapeUtil.escapeHtml(text.substring(offset, hit[0]))).append(HIGHLIGHT_PRE);
+                buf.append(EscapeUtil.escapeHtml(text.substring(hit[0], hit[1]))).append(HIGHLIGHT_POST);
+                offset = hit[1];
+            }
+            buf.append(EscapeUtil.escapeHtml(text.substring(offset)));
+            return buf.toString().trim();
+        }
+    }
+}
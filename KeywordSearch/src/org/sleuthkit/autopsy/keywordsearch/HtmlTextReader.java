@@ -0,0 +1,342 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import net.htmlparser.jericho.Attributes;
+import net.htmlparser.jericho.CharacterReference;
+import net.htmlparser.jericho.EndTag;
+import net.htmlparser.jericho.HTMLElementName;
+import net.htmlparser.jericho.HTMLElements;
+import net.htmlparser.jericho.Segment;
+import net.htmlparser.jericho.StartTag;
+import net.htmlparser.jericho.StartTagType;
+import net.htmlparser.jericho.StreamedSource;
+import net.htmlparser.jericho.Tag;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Reader of the text of an HTML stream, parsed incrementally with the Jericho
+ * StreamedSource, so that the text is read as the HTML is parsed, and the
+ * memory used does not depend on the size of the HTML.
+ *
+ * The visible text is read first, with white space collapsed and a line
+ * break after every ". ", then the non-visible text: scripts, links, images,
+ * comments and other tags with attributes, each in its own section. The
+ * sections are collected while the visible text is read, and spill to temp
+ * files when large.
+ */
+class HtmlTextReader extends Reader {
+
+    private static final Logger logger = Logger.getLogger(HtmlTextReader.class.getName());
+    //min chars of text parsed at a time
+    private static final int FILL_CHARS = 8 * 1024;
+    //chars of a section kept in memory, the rest is written to a temp file
+    private static final int MAX_SECTION_BUFFER_CHARS = 64 * 1024;
+    private static final Charset SPILL_CHARSET = Charset.forName("UTF-8");
+    private static final char NBSP = '\u00A0';
+    private static final Set<String> INLINE_ELEMENTS = HTMLElements.getInlineLevelElementNames();
+    private final StreamedSource source;
+    private final Iterator<Segment> segments;
+    private final File tempDir;
+    //text parsed but not read yet
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingPos = 0;
+    //state of the visible text
+    private boolean visibleDone = false;
+    private boolean pendingSpace = false;
+    private char lastChar = 0;
+    //name of the script or style element the parser is in, or null
+    private String rawElement = null;
+    private final Section scripts = new Section("Scripts");
+    private final Section links = new Section("Links");
+    private final Section images = new Section("Images");
+    private final Section comments = new Section("Comments");
+    private final Section others = new Section("Others");
+    //readers of the non-visible text, read after the visible text
+    private final List<Reader> sectionReaders = new ArrayList<Reader>();
+    private int curSectionReader = 0;
+
+    /**
+     * @param in HTML stream, the encoding is detected from the stream
+     * @param tempDir directory to spill large sections to, or null for the
+     * default temp directory
+     * @throws IOException if the stream could not be read
+     */
+    HtmlTextReader(InputStream in, File tempDir) throws IOException {
+        this.source = new StreamedSource(in);
+        this.segments = source.iterator();
+        this.tempDir = tempDir;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (pendingPos == pending.length()) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        final int n = Math.min(len, pending.length() - pendingPos);
+        pending.getChars(pendingPos, pendingPos + n, cbuf, off);
+        pendingPos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Reader sectionReader : sectionReaders) {
+            sectionReader.close();
+        }
+        for (Section section : new Section[]{scripts, links, images, comments, others}) {
+            section.delete();
+        }
+        source.close();
+    }
+
+    /**
+     * Parse more of the HTML, or read more of the non-visible sections, into
+     * the pending text
+     *
+     * @return false if there is no more text
+     */
+    private boolean fill() throws IOException {
+        pending.setLength(0);
+        pendingPos = 0;
+        if (!visibleDone) {
+            while (pending.length() < FILL_CHARS && segments.hasNext()) {
+                addSegment(segments.next());
+            }
+            if (!segments.hasNext()) {
+                visibleDone = true;
+                pending.append("\n\n");
+                startSections();
+            }
+            return true;
+        }
+
+        final char[] buf = new char[FILL_CHARS];
+        while (curSectionReader < sectionReaders.size()) {
+            final int read = sectionReaders.get(curSectionReader).read(buf);
+            if (read > 0) {
+                pending.append(buf, 0, read);
+                return true;
+            }
+            ++curSectionReader;
+        }
+        return false;
+    }
+
+    private void addSegment(Segment segment) throws IOException {
+        if (rawElement != null) {
+            //content of a script or style element, up to its end tag
+            if (segment instanceof EndTag && ((EndTag) segment).getName().equals(rawElement)) {
+                if (rawElement.equals(HTMLElementName.SCRIPT)) {
+                    scripts.append("\n");
+                }
+                rawElement = null;
+                pendingSpace = true;
+            } else if (rawElement.equals(HTMLElementName.SCRIPT)) {
+                scripts.append(segment.toString());
+            }
+            return;
+        }
+
+        if (segment instanceof StartTag) {
+            addStartTag((StartTag) segment);
+        } else if (segment instanceof Tag) {
+            if (!INLINE_ELEMENTS.contains(((Tag) segment).getName())) {
+                pendingSpace = true;
+            }
+        } else if (segment instanceof CharacterReference) {
+            addVisible(Character.toString(((CharacterReference) segment).getChar()));
+        } else {
+            addVisible(CharacterReference.decode(segment));
+        }
+    }
+
+    private void addStartTag(StartTag tag) throws IOException {
+        final String name = tag.getName();
+        if (!INLINE_ELEMENTS.contains(name) || name.equals(HTMLElementName.BR)) {
+            pendingSpace = true;
+        }
+
+        if (name.equals(HTMLElementName.SCRIPT)) {
+            scripts.startItem();
+            final String tagContent = tag.getTagContent().toString();
+            if (tagContent.length() > 0) {
+                scripts.append(tagContent).append(" ");
+            }
+            if (!tag.isSyntacticalEmptyElementTag()) {
+                rawElement = HTMLElementName.SCRIPT;
+            } else {
+                scripts.append("\n");
+            }
+        } else if (name.equals(HTMLElementName.STYLE)) {
+            if (!tag.isSyntacticalEmptyElementTag()) {
+                rawElement = HTMLElementName.STYLE;
+            }
+        } else if (name.equals(HTMLElementName.A)) {
+            links.startItem();
+            links.append(tag.getTagContent().toString()).append("\n");
+        } else if (name.equals(HTMLElementName.IMG)) {
+            images.startItem();
+            images.append(tag.getTagContent().toString()).append("\n");
+        } else if (tag.getTagType().equals(StartTagType.COMMENT)) {
+            comments.startItem();
+            comments.append(tag.getTagContent().toString()).append("\n");
+        } else {
+            // Make sure it has an attribute
+            Attributes atts = tag.getAttributes();
+            if (atts != null && atts.length() > 0) {
+                others.startItem();
+                others.append(name).append(":");
+                others.append(tag.getTagContent().toString()).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Add visible text, collapsing white space, and breaking the line after
+     * every ". ". As with the Jericho TextExtractor, a non-breaking space is
+     * not collapsed, but added as a space.
+     */
+    private void addVisible(String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && lastChar != 0) {
+                addSpace();
+            }
+            pendingSpace = false;
+            if (c == NBSP) {
+                addSpace();
+            } else {
+                pending.append(c);
+                lastChar = c;
+            }
+        }
+    }
+
+    private void addSpace() {
+        pending.append(' ');
+        if (lastChar == '.') {
+            pending.append('\n');
+        }
+        lastChar = ' ';
+    }
+
+    private void startSections() throws IOException {
+        sectionReaders.add(new StringReader("----------NONVISIBLE TEXT----------\n\n"));
+        for (Section section : new Section[]{scripts, links, images, comments, others}) {
+            if (section.numItems > 0) {
+                sectionReaders.add(new StringReader("---" + section.title + "---\n"));
+                sectionReaders.add(section.getReader());
+                sectionReaders.add(new StringReader("\n"));
+            }
+        }
+    }
+
+    /**
+     * Numbered items of a section of non-visible text, in memory up to a
+     * limit, then in a temp file
+     */
+    private class Section {
+
+        private final String title;
+        private int numItems = 0;
+        private final StringBuilder buffer = new StringBuilder();
+        private File spillFile = null;
+        private Writer spillWriter = null;
+
+        Section(String title) {
+            this.title = title;
+        }
+
+        void startItem() throws IOException {
+            ++numItems;
+            append(Integer.toString(numItems)).append(") ");
+        }
+
+        Section append(String text) throws IOException {
+            buffer.append(text);
+            if (buffer.length() > MAX_SECTION_BUFFER_CHARS) {
+                if (spillWriter == null) {
+                    spillFile = File.createTempFile("html_" + title.toLowerCase(), ".txt", tempDir);
+                    spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), SPILL_CHARSET));
+                }
+                spillWriter.append(buffer);
+                buffer.setLength(0);
+            }
+            return this;
+        }
+
+        /**
+         * @return reader of the items, once all were added
+         */
+        Reader getReader() throws IOException {
+            if (spillWriter == null) {
+                return new StringReader(buffer.toString());
+            }
+            spillWriter.append(buffer);
+            buffer.setLength(0);
+            spillWriter.close();
+            spillWriter = null;
+            return new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), SPILL_CHARSET));
+        }
+
+        void delete() {
+            if (spillWriter != null) {
+                try {
+                    spillWriter.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Could not close HTML text section file: " + spillFile, ex);
+                }
+                spillWriter = null;
+            }
+            if (spillFile != null && !spillFile.delete()) {
+                logger.log(Level.WARNING, "Could not delete HTML text section file: " + spillFile);
+            }
+            spillFile = null;
+        }
+    }
+}
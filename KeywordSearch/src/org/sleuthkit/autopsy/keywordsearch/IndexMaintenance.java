@@ -0,0 +1,138 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.IngestManager;
+
+/**
+ * Merges the small index segments left by ingest while the index is idle, so
+ * that later searches do not pay for the fragmented index.
+ *
+ * The index is checked periodically while a case is open. When ingest is not
+ * running and there was no search or indexing for a while, the segments are
+ * merged in steps, each step halving the number of segments, with one step
+ * per check, down to a few segments. The last merge to a single segment is
+ * skipped, on a large case it would rewrite the whole index in a step that
+ * can not be interrupted. A running step completes, but no new step is
+ * started once ingest or searches begin again. Each step opens a new
+ * searcher with empty caches, so the index is warmed up again once the
+ * merging is done. The merges stop when the case is closed.
+ */
+class IndexMaintenance {
+
+    private static final Logger logger = Logger.getLogger(IndexMaintenance.class.getName());
+    //time between checks, at most one merge step per check
+    private static final long CHECK_INTERVAL = 60; //in s
+    //time without index activity for the index to be idle
+    private static final long IDLE_TIME = 2 * 60 * 1000; //in ms
+    //segments left when done, not merged into one
+    private static final int TARGET_SEGMENTS = 4;
+    private static final long NO_GENERATION = -1;
+    private static final ScheduledExecutorService maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Keyword search index maintenance");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+    private static ScheduledFuture<?> currentTask = null;
+
+    private IndexMaintenance() {
+    }
+
+    /**
+     * Start checking the index of the case just opened
+     */
+    static synchronized void start() {
+        stop();
+        currentTask = maintenanceExecutor.scheduleWithFixedDelay(new MaintenanceTask(), CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop checking the index, e.g. when the case is closed. A merge step in
+     * progress completes in Solr.
+     */
+    static synchronized void stop() {
+        if (currentTask != null) {
+            currentTask.cancel(false);
+            currentTask = null;
+        }
+    }
+
+    private static class MaintenanceTask implements Runnable {
+
+        //index generation with no segments left to merge
+        private long doneGeneration = NO_GENERATION;
+        //whether segments were merged since the index was last warmed up
+        private boolean merged = false;
+
+        @Override
+        public void run() {
+            final Server server = KeywordSearch.getServer();
+            try {
+                if (!isIdle(server)) {
+                    return;
+                }
+                final long generation = server.getIndexGeneration();
+                if (generation == doneGeneration) {
+                    return;
+                }
+                final int segments = server.getSegmentCount();
+                if (segments < 0) {
+                    logger.log(Level.INFO, "Index segment count not available, skipping index maintenance");
+                    doneGeneration = generation;
+                    return;
+                }
+                if (segments <= TARGET_SEGMENTS) {
+                    doneGeneration = generation;
+                    if (merged) {
+                        merged = false;
+                        IndexWarmup.start();
+                    }
+                    return;
+                }
+
+                final int maxSegments = Math.max(TARGET_SEGMENTS, segments / 2);
+                final long start = System.currentTimeMillis();
+                server.optimize(maxSegments);
+                merged = true;
+                logger.log(Level.INFO, "Merged index segments from " + segments + " to at most " + maxSegments
+                        + " in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (NoOpenCoreException ex) {
+                //case closed
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Could not merge index segments", ex);
+            }
+        }
+
+        private boolean isIdle(Server server) {
+            return !IngestManager.getDefault().isIngestRunning()
+                    && System.currentTimeMillis() - server.getLastActivityTime() > IDLE_TIME;
+        }
+    }
+}
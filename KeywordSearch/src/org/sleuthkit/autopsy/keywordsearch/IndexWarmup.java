@@ -0,0 +1,165 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.keywordsearch.KeywordQueryFilter.FilterType;
+
+/**
+ * Warms up the index of a case after it is opened, so that the first keyword
+ * search, extracted text page or highlight does not pay for loading the
+ * segments and filling the Solr caches.
+ *
+ * The warmup runs in the background with low priority: it loads the
+ * segments, primes the field cache and the filter cache for the image ids,
+ * and runs the keywords of the configured keyword lists. It is cancelled when
+ * the case is closed.
+ */
+class IndexWarmup {
+
+    private static final Logger logger = Logger.getLogger(IndexWarmup.class.getName());
+    //max keywords from the lists to run, the rest warm up on use
+    private static final int MAX_WARMUP_KEYWORDS = 50;
+    private static final ExecutorService warmupExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Keyword search index warmup");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+    //warmup of the open case, cancelled when the case is closed
+    private static volatile WarmupTask currentTask = null;
+
+    private IndexWarmup() {
+    }
+
+    /**
+     * Start warming up the index of the case just opened, does not block
+     */
+    static synchronized void start() {
+        cancel();
+        currentTask = new WarmupTask();
+        warmupExecutor.submit(currentTask);
+    }
+
+    /**
+     * Stop the warmup in progress, if any, e.g. when the case is closed
+     */
+    static synchronized void cancel() {
+        if (currentTask != null) {
+            currentTask.cancelled = true;
+            currentTask = null;
+        }
+    }
+
+    private static class WarmupTask implements Runnable {
+
+        private volatile boolean cancelled = false;
+
+        @Override
+        public void run() {
+            final long start = System.currentTimeMillis();
+            try {
+                final Server server = KeywordSearch.getServer();
+
+                //load the segments of the index
+                final SolrQuery all = new SolrQuery("*:*");
+                all.setRows(0);
+                //prime the field cache for image_id with a facet
+                all.setFacet(true);
+                all.addFacetField(Server.Schema.IMAGE_ID.toString());
+                all.setFacetLimit(-1);
+                all.setFacetMinCount(1);
+                final QueryResponse allResponse = server.query(all);
+                final long numDocs = allResponse.getResults().getNumFound();
+
+                //prime the filter cache with the image filters of the keyword queries
+                final FacetField images = allResponse.getFacetField(Server.Schema.IMAGE_ID.toString());
+                if (images != null && images.getValues() != null) {
+                    for (FacetField.Count image : images.getValues()) {
+                        if (cancelled) {
+                            return;
+                        }
+                        final SolrQuery filtered = new SolrQuery("*:*");
+                        filtered.setRows(0);
+                        filtered.addFilterQuery(new KeywordQueryFilter(FilterType.IMAGE, Long.parseLong(image.getName())).toString());
+                        server.query(filtered);
+                    }
+                }
+
+                //run the keywords of the lists, as the first searches will
+                int numKeywords = 0;
+                for (Keyword keyword : getListKeywords()) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (keyword.isLiteral()) {
+                        final SolrQuery q = new SolrQuery(KeywordSearchUtil.quoteQuery(KeywordSearchUtil.escapeLuceneQuery(keyword.getQuery())));
+                        q.setFields(Server.Schema.ID.toString());
+                        q.setRows(0);
+                        server.query(q, METHOD.POST);
+                    } else {
+                        //loads the terms dictionary used by the regex searches
+                        TermsDictionary.getDefault().findTerms(keyword.getQuery());
+                    }
+                    ++numKeywords;
+                }
+
+                logger.log(Level.INFO, "Index warmup done in " + (System.currentTimeMillis() - start)
+                        + " ms, documents: " + numDocs + ", keywords: " + numKeywords);
+            } catch (NoOpenCoreException ex) {
+                //case closed
+            } catch (Exception ex) {
+                //the index is only colder, searches still work
+                logger.log(Level.WARNING, "Index warmup did not complete", ex);
+            }
+        }
+
+        /**
+         * @return keywords of the configured lists, without duplicates, up to
+         * the max number of keywords to warm up with
+         */
+        private Set<Keyword> getListKeywords() {
+            final Set<Keyword> keywords = new LinkedHashSet<Keyword>();
+            final List<KeywordSearchList> lists = KeywordSearchListsXML.getCurrent().getListsL();
+            for (KeywordSearchList list : lists) {
+                for (Keyword keyword : list.getKeywords()) {
+                    if (keywords.size() == MAX_WARMUP_KEYWORDS) {
+                        return keywords;
+                    }
+                    keywords.add(keyword);
+                }
+            }
+            return keywords;
+        }
+    }
+}
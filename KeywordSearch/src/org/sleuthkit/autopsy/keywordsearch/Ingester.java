@@ -32,6 +32,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -45,6 +46,7 @@ import org.openide.util.Exceptions;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.datamodel.ContentUtils;
 import org.sleuthkit.autopsy.keywordsearch.Server.SolrServerNoPortException;
+import org.sleuthkit.autopsy.keywordsearch.SolrRequestStats.RequestType;
 import org.sleuthkit.datamodel.AbstractContent;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
@@ -62,11 +64,20 @@ import org.sleuthkit.datamodel.TskCoreException;
 public class Ingester {
 
     private static final Logger logger = Logger.getLogger(Ingester.class.getName());
-    private boolean uncommitedIngests = false;
+    private volatile boolean uncommitedIngests = false;
+    //approx. bytes of content added since the last soft and hard commit
+    private final AtomicLong bytesSinceSoftCommit = new AtomicLong();
+    private final AtomicLong bytesSinceCommit = new AtomicLong();
     private final ExecutorService upRequestExecutor = Executors.newSingleThreadExecutor();
+    //runs hard commits in the background, at most one pending at a time
+    private final ExecutorService commitExecutor = Executors.newSingleThreadExecutor();
+    private volatile boolean commitPending = false;
     private final Server solrServer = KeywordSearch.getServer();
     private final GetContentFieldsV getContentFieldsV = new GetContentFieldsV();
+    private final ChunkDigestIndex chunkDigests = ChunkDigestIndex.getDefault();
+    private final SolrRequestStats requestStats = SolrRequestStats.getDefault();
     private static Ingester instance;
+    private volatile ChunkTextListener chunkTextListener = null;
    
     //for ingesting chunk as SolrInputDocument (non-content-streaming, by-pass tika)
     //TODO use a streaming way to add content to /update handler
@@ -147,7 +158,22 @@ public class Ingester {
         params.put(Server.Schema.ID.toString(),
                 Server.getChunkIdString(sourceContent.getId(), fec.getChunkId()));
 
-        ingest(bcs, params, size);
+        final String chunkText = ingest(bcs, params, size, true);
+
+        final ChunkTextListener listener = chunkTextListener;
+        if (listener != null) {
+            listener.chunkIndexed(fec.getParent().getSourceFile(), fec.getChunkId(), chunkText);
+        }
+    }
+
+    /**
+     * Set the listener to be notified with the text of every chunk added to
+     * the index
+     *
+     * @param listener the listener to notify, or null to stop notifying
+     */
+    void setChunkTextListener(ChunkTextListener listener) {
+        this.chunkTextListener = listener;
     }
 
     /**
@@ -243,9 +269,25 @@ public class Ingester {
      * @param cs
      * @param fields
      * @param size
+     * @return the content text added to the index, empty if none
+     * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException 
+     */
+    private String ingest(ContentStream cs, Map<String, String> fields, final long size) throws IngesterException {
+        return ingest(cs, fields, size, false);
+    }
+
+    /**
+     * Indexing method that bypasses Tika, assumes pure text
+     *
+     * @param cs
+     * @param fields
+     * @param size
+     * @param dedupContent if true, content identical to a chunk indexed before
+     * is not indexed again, the document references that chunk instead
+     * @return the content text, empty if none
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException 
      */
-    private void ingest(ContentStream cs, Map<String, String> fields, final long size) throws IngesterException {
+    private String ingest(ContentStream cs, Map<String, String> fields, final long size, boolean dedupContent) throws IngesterException {
         
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //skip the file, image id unknown
@@ -263,14 +305,21 @@ public class Ingester {
         //using size here, but we are no longer ingesting entire files
         //size is normally a chunk size, up to 1MB
     
+        String s = "";
+        ChunkDigestIndex.Digest digest = null; //digest of new content to record once indexed
+        boolean contentRef = false;
+        boolean storeText = false; //content is indexed, but its text is kept in the text store
         if (size > 0) {
  
             InputStream is = null;
             int read = 0;
+            final long readStart = SolrRequestStats.start();
             try {
                 is = cs.getStream();
                 read = is.read(docChunkContentBuf);
+                requestStats.done(RequestType.CHUNK_READ, readStart, read);
             } catch (IOException ex) {
+                requestStats.failed(RequestType.CHUNK_READ, readStart, ex);
                 throw new IngesterException("Could not read content stream: " + cs.getName());
             } finally {
                 try {
@@ -281,13 +330,30 @@ public class Ingester {
             }
 
             if (read != 0) {
-                String s = "";
                 try {
                     s = new String(docChunkContentBuf, 0, read, docContentEncoding);
                 } catch (UnsupportedEncodingException ex) {
                     Exceptions.printStackTrace(ex);
                 }
-                updateDoc.addField(Server.Schema.CONTENT.toString(), s);
+                String refIdStr = null;
+                if (dedupContent && read > 0) {
+                    digest = chunkDigests.getDigest(docChunkContentBuf, read,
+                            Long.parseLong(fields.get(Server.Schema.IMAGE_ID.toString())));
+                    if (digest != null) {
+                        refIdStr = chunkDigests.getChunk(digest);
+                    }
+                }
+                if (refIdStr != null && !refIdStr.equals(fields.get(Server.Schema.ID.toString()))) {
+                    //same text already indexed, store a reference to it only
+                    updateDoc.addField(Server.Schema.CHUNK_REF.toString(), refIdStr);
+                    updateDoc.addField(Server.Schema.CONTENT.toString(), "");
+                    contentRef = true;
+                    digest = null;
+                } else {
+                    //indexed only, the text is kept in the text store
+                    updateDoc.addField(Server.Schema.CONTENT_INDEXED.toString(), s);
+                    storeText = true;
+                }
             } else {
                 updateDoc.addField(Server.Schema.CONTENT.toString(), "");
             }
@@ -299,13 +365,23 @@ public class Ingester {
         
 
         try {
+            //the text is only kept in the store, not in Solr,
+            //so store it before the document can be found
+            if (storeText) {
+                solrServer.addExtractedText(fields.get(Server.Schema.ID.toString()), s);
+            }
             //TODO consider timeout thread, or vary socket timeout based on size of indexed content
             solrServer.addDocument(updateDoc);
             uncommitedIngests = true;
+            addedBytes(contentRef ? 0 : size);
+            if (digest != null) {
+                chunkDigests.addChunk(digest, fields.get(Server.Schema.ID.toString()));
+            }
         } catch (KeywordSearchModuleException ex) {
             throw new IngesterException("Error ingestint document: " + cs.getName(), ex);
         }
 
+        return s;
 
     }
 
@@ -340,6 +416,7 @@ public class Ingester {
         try {
             f.get(getTimeout(size), TimeUnit.SECONDS);
         } catch (TimeoutException te) {
+            requestStats.timedOut(RequestType.EXTRACT);
             logger.log(Level.WARNING, "Solr timeout encountered, trying to restart Solr");
             //restart may be needed to recover from some error conditions
             hardSolrRestart();
@@ -348,12 +425,14 @@ public class Ingester {
             throw new IngesterException("Problem posting content to Solr, id: " + fields.get("id") + ", name: " + fields.get("file_name"), e);
         }
         uncommitedIngests = true;
+        addedBytes(size);
     }
 
     /**
      * attempt to restart Solr and recover from its internal error
      */
     private void hardSolrRestart() {
+        requestStats.restarted();
         try {
             solrServer.closeCore();
         } catch (KeywordSearchModuleException ex) {
@@ -446,6 +525,8 @@ public class Ingester {
      */
     void commit() {
         try {
+            bytesSinceSoftCommit.set(0);
+            bytesSinceCommit.set(0);
             solrServer.commit();
             uncommitedIngests = false;
         } catch (NoOpenCoreException ex) {
@@ -455,6 +536,70 @@ public class Ingester {
         }
     }
 
+    /**
+     * Tells Solr to soft commit, so that ingested files appear in searches,
+     * without flushing the index to disk. Much cheaper than commit(), but the
+     * files are not durable until the next commit.
+     */
+    void softCommit() {
+        try {
+            bytesSinceSoftCommit.set(0);
+            solrServer.softCommit();
+        } catch (NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Error soft commiting index", ex);
+        } catch (SolrServerException ex) {
+            logger.log(Level.WARNING, "Error soft commiting index", ex);
+        }
+    }
+
+    /**
+     * Starts a commit in the background, unless one is already running, so
+     * that ingest is not blocked while the index is flushed to disk.
+     */
+    void commitAsync() {
+        if (commitPending) {
+            return;
+        }
+        commitPending = true;
+        bytesSinceCommit.set(0);
+        commitExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logger.log(Level.INFO, "Commiting index in background");
+                    solrServer.commit();
+                    logger.log(Level.INFO, "Index comitted in background");
+                } catch (NoOpenCoreException ex) {
+                    logger.log(Level.WARNING, "Error commiting index", ex);
+                } catch (SolrServerException ex) {
+                    logger.log(Level.WARNING, "Error commiting index", ex);
+                } finally {
+                    commitPending = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return approx. bytes of content added since the last soft commit or
+     * commit
+     */
+    long getBytesSinceSoftCommit() {
+        return bytesSinceSoftCommit.get();
+    }
+
+    /**
+     * @return approx. bytes of content added since the last commit
+     */
+    long getBytesSinceCommit() {
+        return bytesSinceCommit.get();
+    }
+
+    private void addedBytes(long size) {
+        bytesSinceSoftCommit.addAndGet(size);
+        bytesSinceCommit.addAndGet(size);
+    }
+
     /**
      * Helper to set document fields
      *
@@ -551,6 +696,20 @@ public class Ingester {
         }
     }
 
+    /**
+     * Listener notified with the text of every file chunk, right after the
+     * chunk has been added to the index
+     */
+    interface ChunkTextListener {
+
+        /**
+         * @param sourceFile the file the chunk was extracted from
+         * @param chunkId the id of the chunk
+         * @param text the chunk text as indexed
+         */
+        void chunkIndexed(AbstractFile sourceFile, int chunkId, String text);
+    }
+
     /**
      * Indicates that there was an error with the specific ingest operation, but
      * it's still okay to continue ingesting files.
@@ -173,6 +173,7 @@ public class Installer extends ModuleInstall {
 
     @Override
     public boolean closing() {
+        TikaWorkerPool.getDefault().shutdown();
         try {
             KeywordSearch.getServer().stop();
         } catch (KeywordSearchModuleException ex) {
@@ -0,0 +1,42 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cursor over results of a keyword query, retrieving the hits lazily a page
+ * at a time, so that the results can be processed with bounded memory
+ */
+public interface KeywordQueryCursor {
+
+    /**
+     * @return true if there may be more pages of results to get
+     */
+    public boolean hasNextPage();
+
+    /**
+     * get the next page of results
+     * hits of a term can span more than one page
+     * @throws NoOpenCoreException if query failed due to server error, this could be a notification to stop processing
+     * @return hits in the page by matching term, can be empty
+     */
+    public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException;
+}
@@ -122,15 +122,25 @@ public class KeywordSearch {
                     // new case is open
                     try {
                         server.openCore();
+                        IndexWarmup.start();
+                        IndexMaintenance.start();
                     } catch (Exception e) {
                         logger.log(Level.WARNING, "Could not open core.");
                     }
                 } else if (oldValue != null) {
                     // a case was closed
                     try {
+                        IndexWarmup.cancel();
+                        IndexMaintenance.stop();
                         ResultWriter.stopAllWriters();
                         Thread.sleep(2000);
                         server.closeCore();
+                        TermsDictionary.getDefault().clear();
+                        AbstractFileCache.getDefault().clear();
+                        HighlightedMatchesSource.clearHighlightsCache();
+                        ChunkContentCache.getDefault().clear();
+                        QueryResultCache.getDefault().clear();
+                        ChunkDigestIndex.getDefault().clear();
                     } catch (Exception e) {
                         logger.log(Level.WARNING, "Could not close core.");
                     }
@@ -29,7 +29,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -101,6 +108,10 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
     private IngestServices services;
     private Ingester ingester = null;
     private volatile boolean commitIndex = false; //whether to commit index next time
+    //content indexed since the last soft commit that makes it searchable before the commit timer goes off
+    private static final long SOFT_COMMIT_BYTES = 64L * 1024 * 1024;
+    //content indexed since the last commit that makes the index durable, the commit runs in the background
+    private static final long COMMIT_BYTES = 512L * 1024 * 1024;
     private volatile boolean runSearcher = false; //whether to run searcher next time
     private List<Keyword> keywords; //keywords to search
     private List<String> keywordLists; // lists currently being searched
@@ -112,12 +123,20 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
     private Searcher finalSearcher;
     private volatile boolean searcherDone = true; //mark as done, until it's inited
     private Map<Keyword, List<Long>> currentResults;
+    //reports hits found by matching the keywords against chunks as they are indexed
+    private volatile ChunkHitReporter chunkHitReporter;
+    //whether the lists changed during ingest and already indexed content needs to be searched
+    private volatile boolean keywordListsChanged = false;
     //only search images from current ingest, not images previously ingested/indexed
     //accessed read-only by searcher thread
     private Set<Long> curImageIds;
     private static final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true); //use fairness policy
     private static final Lock searcherLock = rwLock.writeLock();
-    private volatile int messageID = 0;
+    //max keyword queries of a searcher running at the same time
+    private static final int NUM_QUERY_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    //max keywords queried ahead of the keyword whose results are being written, only their first page is read ahead
+    private static final int QUERY_WINDOW = NUM_QUERY_THREADS * 2;
+    private final AtomicInteger messageID = new AtomicInteger(0);
     private boolean processedFiles;
     private volatile boolean finalSearcherDone = true;  //mark as done, until it's inited
     private final String hashDBModuleName = "Hash Lookup"; //NOTE this needs to match the HashDB module getName()
@@ -252,7 +271,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             finalSearcher.execute();
         } else {
             finalSearcherDone = true;
-            services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, this, "Completed"));
+            services.postMessage(IngestMessage.createMessage(messageID.incrementAndGet(), MessageType.INFO, this, "Completed"));
         }
 
         //log number of files / chunks in index
@@ -307,6 +326,10 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
      * Common cleanup code when module stops or final searcher completes
      */
     private void cleanup() {
+        ingester.setChunkTextListener(null);
+        chunkHitReporter = null;
+        keywordListsChanged = false;
+
         ingestStatus.clear();
         currentResults.clear();
         curImageIds.clear();
@@ -375,7 +398,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                 String msg = "Keyword search server was not properly initialized, cannot run keyword search ingest. ";
                 logger.log(Level.SEVERE, msg);
                 String details = msg + "Please try restarting the OS and the application";
-                services.postMessage(IngestMessage.createErrorMessage(++messageID, instance, msg, details));
+                services.postMessage(IngestMessage.createErrorMessage(messageID.incrementAndGet(), instance, msg, details));
                 return;
 
             }
@@ -412,9 +435,10 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         keywordToList = new HashMap<String, KeywordSearchList>();
 
         initKeywords();
+        initChunkHitReporter();
 
         if (keywords.isEmpty() || keywordLists.isEmpty()) {
-            services.postMessage(IngestMessage.createWarningMessage(++messageID, instance, "No keywords in keyword list.", "Only indexing will be done and and keyword search will be skipped (you can still add keyword lists using the Keyword Lists - Add to Ingest)."));
+            services.postMessage(IngestMessage.createWarningMessage(messageID.incrementAndGet(), instance, "No keywords in keyword list.", "Only indexing will be done and and keyword search will be skipped (you can still add keyword lists using the Keyword Lists - Add to Ingest)."));
         }
 
         processedFiles = false;
@@ -439,7 +463,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         commitTimer.start();
         searchTimer.start();
 
-        services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, this, "Started"));
+        services.postMessage(IngestMessage.createMessage(messageID.incrementAndGet(), MessageType.INFO, this, "Started"));
     }
 
     @Override
@@ -551,7 +575,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         msg.append("<br />Skipped files: ").append(skipped).append("<br />");
         String indexStats = msg.toString();
         logger.log(Level.INFO, "Keyword Indexing Completed: " + indexStats);
-        services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, this, "Keyword Indexing Completed", indexStats));
+        services.postMessage(IngestMessage.createMessage(messageID.incrementAndGet(), MessageType.INFO, this, "Keyword Indexing Completed", indexStats));
 
     }
 
@@ -615,20 +639,76 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
 
         logger.log(Level.INFO, "Set new effective keyword lists: " + sb.toString());
 
+        if (initialized) {
+            //content indexed so far has not been matched against the new lists
+            initChunkHitReporter();
+            keywordListsChanged = true;
+        }
+
+    }
+
+    /**
+     * Build the index time matcher from the keywords in the lists currently
+     * searched, and have the ingester feed it with the indexed chunks
+     */
+    private void initChunkHitReporter() {
+        KeywordSearchListsXML loader = KeywordSearchListsXML.getCurrent();
+        List<Keyword> matcherKeywords = new ArrayList<Keyword>();
+        Map<String, KeywordSearchList> matcherKeywordToList = new HashMap<String, KeywordSearchList>();
+        for (String name : keywordLists) {
+            KeywordSearchList list = loader.getList(name);
+            if (list == null) {
+                continue;
+            }
+            for (Keyword k : list.getKeywords()) {
+                matcherKeywords.add(k);
+                matcherKeywordToList.put(k.getQuery(), list);
+            }
+        }
+
+        ChunkKeywordMatcher matcher = new ChunkKeywordMatcher(matcherKeywords);
+        if (matcher.isEmpty()) {
+            chunkHitReporter = null;
+        } else {
+            chunkHitReporter = new ChunkHitReporter(matcher, matcherKeywordToList);
+        }
+        ingester.setChunkTextListener(chunkHitReporter);
     }
 
     List<String> getKeywordLists() {
         return keywordLists == null ? new ArrayList<String>() : keywordLists;
     }
 
+    /**
+     * Commits the index adaptively, based on the content indexed since the
+     * last commits. New files are made searchable with a soft commit, when
+     * enough content was indexed or when the commit timer goes off. The index
+     * is made durable in the background, only after a lot of content was
+     * indexed, and with a blocking commit when ingest completes or stops.
+     */
+    private void softCommit() {
+        if (initialized) {
+            logger.log(Level.INFO, "Soft commiting index");
+            ingester.softCommit();
+            //signal a potential change in number of indexed files
+            indexChangeNotify();
+
+            if (ingester.getBytesSinceCommit() >= COMMIT_BYTES) {
+                ingester.commitAsync();
+            }
+        }
+    }
+
     /**
      * Check if time to commit, if so, run commit. Then run search if search
      * timer is also set.
      */
     void checkRunCommitSearch() {
+        if (!commitIndex && ingester.getBytesSinceSoftCommit() >= SOFT_COMMIT_BYTES) {
+            softCommit();
+        }
         if (commitIndex) {
-            logger.log(Level.INFO, "Commiting index");
-            commit();
+            softCommit();
             commitIndex = false;
 
             //after commit, check if time to run searcher
@@ -636,7 +716,11 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             //in worst case, we will run search next time after commit timer goes off, or at the end of ingest
             if (searcherDone && runSearcher) {
                 //start search if previous not running
-                if (keywordLists != null && !keywordLists.isEmpty()) {
+                //hits in new chunks are already reported at index time, 
+                //only search the index if the lists changed since the content was indexed
+                if (keywordLists != null && !keywordLists.isEmpty()
+                        && (chunkHitReporter == null || keywordListsChanged)) {
+                    keywordListsChanged = false;
                     currentSearcher = new Searcher(keywordLists);
                     currentSearcher.execute();//searcher will stop timer and restart timer when done
                 }
@@ -644,6 +728,95 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
     }
 
+    /**
+     * Posts an inbox data message for a keyword hit written to the blackboard,
+     * if the list the keyword belongs to is set to send ingest messages
+     *
+     * @param written the keyword hit artifact and attributes written
+     * @param hitFile file with the hit
+     * @param isLiteral true if the keyword is literal, false if regex
+     * @param list the list the keyword belongs to
+     */
+    private void postHitMessage(KeywordWriteResult written, AbstractFile hitFile, boolean isLiteral, KeywordSearchList list) {
+        //check if should send messages on hits on this list
+        if (!list.getIngestMessages()) {
+            return;
+        }
+
+        //generate a data message for each artifact
+        StringBuilder subjectSb = new StringBuilder();
+        StringBuilder detailsSb = new StringBuilder();
+        //final int hitFiles = newResults.size();
+
+        if (!isLiteral) {
+            subjectSb.append("RegExp hit: ");
+        } else {
+            subjectSb.append("Keyword hit: ");
+        }
+        //subjectSb.append("<");
+        String uniqueKey = null;
+        BlackboardAttribute attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID());
+        if (attr != null) {
+            final String keyword = attr.getValueString();
+            subjectSb.append(keyword);
+            uniqueKey = keyword.toLowerCase();
+        }
+
+        //subjectSb.append(">");
+        //String uniqueKey = queryStr;
+
+        //details
+        detailsSb.append("<table border='0' cellpadding='4' width='280'>");
+        //hit
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>Keyword hit</th>");
+        detailsSb.append("<td>").append(EscapeUtil.escapeHtml(attr.getValueString())).append("</td>");
+        detailsSb.append("</tr>");
+
+        //preview
+        attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_PREVIEW.getTypeID());
+        if (attr != null) {
+            detailsSb.append("<tr>");
+            detailsSb.append("<th>Preview</th>");
+            detailsSb.append("<td>").append(EscapeUtil.escapeHtml(attr.getValueString())).append("</td>");
+            detailsSb.append("</tr>");
+
+        }
+
+        //file
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>File</th>");
+        if (hitFile.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.FS)) {
+            detailsSb.append("<td>").append(((FsContent) hitFile).getParentPath()).append(hitFile.getName()).append("</td>");
+        } else {
+            detailsSb.append("<td>").append(hitFile.getName()).append("</td>");
+        }
+        detailsSb.append("</tr>");
+
+
+        //list
+        attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID());
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>List</th>");
+        detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
+        detailsSb.append("</tr>");
+
+        //regex
+        if (!isLiteral) {
+            attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID());
+            if (attr != null) {
+                detailsSb.append("<tr>");
+                detailsSb.append("<th>RegEx</th>");
+                detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
+                detailsSb.append("</tr>");
+
+            }
+        }
+        detailsSb.append("</table>");
+
+        services.postMessage(IngestMessage.createDataMessage(messageID.incrementAndGet(), instance, subjectSb.toString(), detailsSb.toString(), uniqueKey, written.getArtifact()));
+    }
+
     /**
      * CommitTimerAction to run by commitTimer Sets a flag to indicate we are
      * ready for commit
@@ -817,6 +990,82 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
     }
 
+    /**
+     * Matches the keywords against the text of every chunk right after it is
+     * indexed and reports the new hits to the blackboard and the inbox, the
+     * same way the Searcher reports hits found in the index
+     */
+    private class ChunkHitReporter implements Ingester.ChunkTextListener {
+
+        private final ChunkKeywordMatcher matcher;
+        private final Map<String, KeywordSearchList> keywordToList;
+
+        ChunkHitReporter(ChunkKeywordMatcher matcher, Map<String, KeywordSearchList> keywordToList) {
+            this.matcher = matcher;
+            this.keywordToList = keywordToList;
+        }
+
+        @Override
+        public void chunkIndexed(AbstractFile sourceFile, int chunkId, String text) {
+            final List<ChunkKeywordMatcher.Hit> hits = matcher.match(text);
+            if (hits.isEmpty()) {
+                return;
+            }
+
+            Collection<BlackboardArtifact> newArtifacts = new ArrayList<BlackboardArtifact>();
+            for (ChunkKeywordMatcher.Hit hit : hits) {
+                final Keyword keyword = hit.getKeyword();
+                final KeywordSearchList list = keywordToList.get(keyword.getQuery());
+
+                //keyed by term the same way as the search results, not to report the same hit twice
+                if (!addCurrentResult(new Keyword(hit.getTerm(), keyword.isLiteral()), sourceFile.getId())) {
+                    continue;
+                }
+
+                KeywordSearchQuery del = null;
+                if (keyword.isLiteral()) {
+                    del = new LuceneQuery(keyword);
+                } else {
+                    del = new TermComponentQuery(keyword);
+                }
+
+                KeywordWriteResult written = del.writeToBlackBoard(hit.getTerm(), sourceFile, hit.getSnippet(), list.getName());
+                if (written == null) {
+                    logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: " + sourceFile + ", hit: " + hit.getTerm());
+                    continue;
+                }
+                newArtifacts.add(written.getArtifact());
+
+                postHitMessage(written, sourceFile, keyword.isLiteral(), list);
+            }
+
+            if (!newArtifacts.isEmpty()) {
+                services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
+            }
+        }
+    }
+
+    /**
+     * Add the file to the results already reported for the term in this ingest
+     *
+     * @param termResult the literal keyword or the regex term hit
+     * @param fileId id of the file with the hit
+     * @return true if it is a new result, false if already reported
+     */
+    private boolean addCurrentResult(Keyword termResult, long fileId) {
+        synchronized (currentResults) {
+            List<Long> curTermResults = currentResults.get(termResult);
+            if (curTermResults == null) {
+                curTermResults = new ArrayList<Long>();
+                currentResults.put(termResult, curTermResults);
+            } else if (curTermResults.contains(fileId)) {
+                return false;
+            }
+            curTermResults.add(fileId);
+            return true;
+        }
+    }
+
     /**
      * Searcher responsible for searching the current index and writing results
      * to blackboard and the inbox. Also, posts results to listeners as Ingest
@@ -885,6 +1134,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             searcherLock.lock();
             final StopWatch stopWatch = new StopWatch();
             stopWatch.start();
+            ExecutorService queryPool = null;
             try {
                 logger.log(Level.INFO, "Started a new searcher");
                 progressGroup.setDisplayName(displayName);
@@ -899,6 +1149,27 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
 
                 //updateKeywords();
 
+                //limit search to currently ingested images
+                final long imageIds[] = new long[curImageIds.size()];
+                final Iterator<Long> it = curImageIds.iterator();
+                for (int imageI = 0; it.hasNext(); ++imageI) {
+                    imageIds[imageI] = it.next();
+                }
+
+                //queries of the keywords run in the pool, ahead of the keyword whose results are being written
+                //results are still written one keyword at a time, in keyword order, 
+                //so that they are deduplicated against the results of the previous keywords
+                queryPool = Executors.newFixedThreadPool(NUM_QUERY_THREADS, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Keyword search query");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                final List<KeywordSearchQuery> queries = new ArrayList<KeywordSearchQuery>();
+                final List<Future<PrefetchedCursor>> queryResults = new ArrayList<Future<PrefetchedCursor>>();
+
                 for (Keyword keywordQuery : keywords) {
                     if (this.isCancelled()) {
                         logger.log(Level.INFO, "Cancel detected, bailing before new keyword processed: " + keywordQuery.getQuery());
@@ -916,201 +1187,145 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                     }
 
 
-                    KeywordSearchQuery del = null;
-
-                    boolean isRegex = !keywordQuery.isLiteral();
-                    if (!isRegex) {
-                        del = new LuceneQuery(keywordQuery);
-                        del.escape();
-                    } else {
-                        del = new TermComponentQuery(keywordQuery);
+                    //keep the pool busy with the queries of the next keywords
+                    while (queryResults.size() < keywords.size() && queryResults.size() <= keywordsSearched + QUERY_WINDOW) {
+                        final KeywordSearchQuery query = createQuery(keywords.get(queryResults.size()), imageIds);
+                        queries.add(query);
+                        queryResults.add(queryPool.submit(new QueryTask(query)));
                     }
 
-                    //limit search to currently ingested images
-                    final long imageIds[] = new long[curImageIds.size()];
-                    final Iterator<Long> it = curImageIds.iterator();
-                    for (int imageI = 0; it.hasNext(); ++imageI) {
-                        imageIds[imageI] = it.next();
-                    }
-                    //set up a filter with 1 or more image ids OR'ed
-                    final KeywordQueryFilter imageFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.IMAGE, imageIds);
-                    del.addFilter(imageFilter);
-
-                    Map<String, List<ContentHit>> queryResult = null;
+                    final KeywordSearchQuery del = queries.get(keywordsSearched);
+                    final boolean isRegex = !keywordQuery.isLiteral();
 
+                    PrefetchedCursor queryPages = null;
                     try {
-                        queryResult = del.performQuery();
-                    } catch (NoOpenCoreException ex) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), ex);
-                        //no reason to continue with next query if recovery failed
-                        //or wait for recovery to kick in and run again later
-                        //likely case has closed and threads are being interrupted
+                        queryPages = queryResults.get(keywordsSearched).get();
+                    } catch (InterruptedException e) {
+                        logger.log(Level.INFO, "Cancel detected, bailing during keyword query: " + keywordQuery.getQuery());
                         return null;
                     } catch (CancellationException e) {
                         logger.log(Level.INFO, "Cancel detected, bailing during keyword query: " + keywordQuery.getQuery());
                         return null;
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e);
-                        continue;
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof NoOpenCoreException) {
+                            logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e.getCause());
+                            //no reason to continue with next query if recovery failed
+                            //or wait for recovery to kick in and run again later
+                            //likely case has closed and threads are being interrupted
+                            return null;
+                        }
+                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e.getCause());
+                        queryPages = new PrefetchedCursor(null, null);
                     }
+                    //release the hits of the keyword once written
+                    queryResults.set(keywordsSearched, null);
+
+                    //scale progress bar more granular, per file hit sub-progress, within per keyword
+                    //the number of hits is an upper bound, hits found by earlier searches are skipped
+                    final int totalUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, queryPages.getNumHits()));
+                    subProgresses[keywordsSearched].start(totalUnits);
+                    int unitProgress = 0;
+                    String queryDisplayStr = keywordQuery.getQuery();
+                    if (queryDisplayStr.length() > 50) {
+                        queryDisplayStr = queryDisplayStr.substring(0, 49) + "...";
+                    }
+                    subProgresses[keywordsSearched].progress(listName + ": " + queryDisplayStr, unitProgress);
 
-                    //calculate new results but substracting results already obtained in this ingest
-                    Map<Keyword, List<ContentHit>> newResults = filterResults(queryResult, isRegex);
-
-                    if (!newResults.isEmpty()) {
+                    //the pages after the first are read here, one at a time, as the hits are written
+                    while (queryPages.hasNextPage()) {
+                        if (this.isCancelled()) {
+                            logger.log(Level.INFO, "Cancel detected, bailing before new page processed for query: " + keywordQuery.getQuery());
+                            return null;
+                        }
+                        Map<String, List<ContentHit>> queryResult = null;
+                        try {
+                            queryResult = queryPages.nextPage();
+                        } catch (NoOpenCoreException e) {
+                            logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e);
+                            //no reason to continue with next query if recovery failed
+                            return null;
+                        } catch (CancellationException e) {
+                            logger.log(Level.INFO, "Cancel detected, bailing during keyword query: " + keywordQuery.getQuery());
+                            return null;
+                        } catch (Exception e) {
+                            //keep the pages written so far
+                            logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e);
+                            break;
+                        }
 
-                        //write results to BB
+                        //calculate new results but substracting results already obtained in this ingest
+                        Map<Keyword, List<ContentHit>> newResults = filterResults(queryResult, isRegex);
 
-                        //new artifacts created, to report to listeners
-                        Collection<BlackboardArtifact> newArtifacts = new ArrayList<BlackboardArtifact>();
+                        if (!newResults.isEmpty()) {
 
-                        //scale progress bar more more granular, per result sub-progress, within per keyword
-                        int totalUnits = newResults.size();
-                        subProgresses[keywordsSearched].start(totalUnits);
-                        int unitProgress = 0;
-                        String queryDisplayStr = keywordQuery.getQuery();
-                        if (queryDisplayStr.length() > 50) {
-                            queryDisplayStr = queryDisplayStr.substring(0, 49) + "...";
-                        }
-                        subProgresses[keywordsSearched].progress(listName + ": " + queryDisplayStr, unitProgress);
+                            //write results to BB
 
+                            //new artifacts created, to report to listeners
+                            Collection<BlackboardArtifact> newArtifacts = new ArrayList<BlackboardArtifact>();
 
-                        for (final Keyword hitTerm : newResults.keySet()) {
-                            //checking for cancellation between results
-                            if (this.isCancelled()) {
-                                logger.log(Level.INFO, "Cancel detected, bailing before new hit processed for query: " + keywordQuery.getQuery());
-                                return null;
-                            }
+                            for (final Keyword hitTerm : newResults.keySet()) {
+                                //checking for cancellation between results
+                                if (this.isCancelled()) {
+                                    logger.log(Level.INFO, "Cancel detected, bailing before new hit processed for query: " + keywordQuery.getQuery());
+                                    return null;
+                                }
 
-                            List<ContentHit> contentHitsAll = newResults.get(hitTerm);
-                            Map<AbstractFile, Integer> contentHitsFlattened = ContentHit.flattenResults(contentHitsAll);
-                            for (final AbstractFile hitFile : contentHitsFlattened.keySet()) {
-                                String snippet = null;
+                                List<ContentHit> contentHitsAll = newResults.get(hitTerm);
+                                Map<AbstractFile, Integer> contentHitsFlattened = ContentHit.flattenResults(contentHitsAll);
+                                //get snippets for all file hits of the term at once
                                 final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hitTerm.getQuery());
-                                int chunkId = contentHitsFlattened.get(hitFile);
+                                Map<AbstractFile, String> snippets = null;
                                 try {
-                                    snippet = LuceneQuery.querySnippet(snippetQuery, hitFile.getId(), chunkId, isRegex, true);
+                                    snippets = LuceneQuery.querySnippets(snippetQuery, contentHitsFlattened, isRegex, true);
                                 } catch (NoOpenCoreException e) {
-                                    logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e);
+                                    logger.log(Level.WARNING, "Error querying snippets: " + snippetQuery, e);
                                     //no reason to continue
                                     return null;
                                 } catch (Exception e) {
-                                    logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e);
-                                    continue;
-                                }
-
-                                KeywordWriteResult written = del.writeToBlackBoard(hitTerm.getQuery(), hitFile, snippet, listName);
-
-                                if (written == null) {
-                                    logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: " + hitFile + ", hit: " + hitTerm.toString());
+                                    logger.log(Level.WARNING, "Error querying snippets: " + snippetQuery, e);
                                     continue;
                                 }
+                                for (final AbstractFile hitFile : contentHitsFlattened.keySet()) {
+                                    final String snippet = snippets.get(hitFile);
 
-                                newArtifacts.add(written.getArtifact());
-
-                                //send notify every 250 results
-                                if (newArtifacts.size() % 250 == 0) {
-                                    services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
-                                }
-
-                                //generate a data message for each artifact
-                                StringBuilder subjectSb = new StringBuilder();
-                                StringBuilder detailsSb = new StringBuilder();
-                                //final int hitFiles = newResults.size();
+                                    KeywordWriteResult written = del.writeToBlackBoard(hitTerm.getQuery(), hitFile, snippet, listName);
 
-                                if (!keywordQuery.isLiteral()) {
-                                    subjectSb.append("RegExp hit: ");
-                                } else {
-                                    subjectSb.append("Keyword hit: ");
-                                }
-                                //subjectSb.append("<");
-                                String uniqueKey = null;
-                                BlackboardAttribute attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID());
-                                if (attr != null) {
-                                    final String keyword = attr.getValueString();
-                                    subjectSb.append(keyword);
-                                    uniqueKey = keyword.toLowerCase();
-                                }
-
-                                //subjectSb.append(">");
-                                //String uniqueKey = queryStr;
-
-                                //details
-                                detailsSb.append("<table border='0' cellpadding='4' width='280'>");
-                                //hit
-                                detailsSb.append("<tr>");
-                                detailsSb.append("<th>Keyword hit</th>");
-                                detailsSb.append("<td>").append(EscapeUtil.escapeHtml(attr.getValueString())).append("</td>");
-                                detailsSb.append("</tr>");
-
-                                //preview
-                                attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_PREVIEW.getTypeID());
-                                if (attr != null) {
-                                    detailsSb.append("<tr>");
-                                    detailsSb.append("<th>Preview</th>");
-                                    detailsSb.append("<td>").append(EscapeUtil.escapeHtml(attr.getValueString())).append("</td>");
-                                    detailsSb.append("</tr>");
+                                    if (written == null) {
+                                        logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: " + hitFile + ", hit: " + hitTerm.toString());
+                                        continue;
+                                    }
 
-                                }
+                                    newArtifacts.add(written.getArtifact());
 
-                                //file
-                                detailsSb.append("<tr>");
-                                detailsSb.append("<th>File</th>");
-                                if (hitFile.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.FS)) {
-                                    detailsSb.append("<td>").append(((FsContent) hitFile).getParentPath()).append(hitFile.getName()).append("</td>");
-                                } else {
-                                    detailsSb.append("<td>").append(hitFile.getName()).append("</td>");
-                                }
-                                detailsSb.append("</tr>");
+                                    //send notify every 250 results
+                                    if (newArtifacts.size() % 250 == 0) {
+                                        services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
+                                    }
 
+                                    postHitMessage(written, hitFile, keywordQuery.isLiteral(), list);
 
-                                //list
-                                attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID());
-                                detailsSb.append("<tr>");
-                                detailsSb.append("<th>List</th>");
-                                detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
-                                detailsSb.append("</tr>");
 
-                                //regex
-                                if (!keywordQuery.isLiteral()) {
-                                    attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID());
-                                    if (attr != null) {
-                                        detailsSb.append("<tr>");
-                                        detailsSb.append("<th>RegEx</th>");
-                                        detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
-                                        detailsSb.append("</tr>");
+                                } //for each file hit
 
-                                    }
-                                }
-                                detailsSb.append("</table>");
+                                unitProgress = Math.min(totalUnits, unitProgress + contentHitsFlattened.size());
 
-                                //check if should send messages on hits on this list
-                                if (list.getIngestMessages()) //post ingest inbox msg
-                                {
-                                    services.postMessage(IngestMessage.createDataMessage(++messageID, instance, subjectSb.toString(), detailsSb.toString(), uniqueKey, written.getArtifact()));
+                                String hitDisplayStr = hitTerm.getQuery();
+                                if (hitDisplayStr.length() > 50) {
+                                    hitDisplayStr = hitDisplayStr.substring(0, 49) + "...";
                                 }
+                                subProgresses[keywordsSearched].progress(listName + ": " + hitDisplayStr, unitProgress);
+                                //subProgresses[keywordsSearched].progress(unitProgress);
 
 
-                            } //for each file hit
+                            }//for each hit term
 
-                            ++unitProgress;
 
-                            String hitDisplayStr = hitTerm.getQuery();
-                            if (hitDisplayStr.length() > 50) {
-                                hitDisplayStr = hitDisplayStr.substring(0, 49) + "...";
+                            //update artifact browser
+                            if (!newArtifacts.isEmpty()) {
+                                services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
                             }
-                            subProgresses[keywordsSearched].progress(listName + ": " + hitDisplayStr, unitProgress);
-                            //subProgresses[keywordsSearched].progress(unitProgress);
-
-
-                        }//for each hit term
-
-
-                        //update artifact browser
-                        if (!newArtifacts.isEmpty()) {
-                            services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
-                        }
-                    } //if has results
+                        } //if has results
+                    } //for each page of results
 
                     //reset the status text before it goes away
                     subProgresses[keywordsSearched].progress("");
@@ -1123,6 +1338,10 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             catch (Exception ex) {
                 logger.log(Level.WARNING, "searcher exception occurred", ex);
             } finally {
+                if (queryPool != null) {
+                    //stop queries of keywords not reached, e.g. when cancelled
+                    queryPool.shutdownNow();
+                }
                 try {
                     finalizeSearcher();
                     stopWatch.stop();
@@ -1135,6 +1354,26 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             return null;
         }
 
+        /**
+         * Create the query of the keyword, limited to the images of the ingest
+         */
+        private KeywordSearchQuery createQuery(Keyword keywordQuery, long[] imageIds) {
+            KeywordSearchQuery del = null;
+
+            boolean isRegex = !keywordQuery.isLiteral();
+            if (!isRegex) {
+                del = new LuceneQuery(keywordQuery);
+                del.escape();
+            } else {
+                del = new TermComponentQuery(keywordQuery);
+            }
+
+            //set up a filter with 1 or more image ids OR'ed
+            final KeywordQueryFilter imageFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.IMAGE, imageIds);
+            del.addFilter(imageFilter);
+            return del;
+        }
+
         /**
          * Sync-up the updated keywords from the currently used lists in the XML
          */
@@ -1155,6 +1394,108 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
 
         }
 
+        /**
+         * Runs a keyword query in the query pool and reads the first page of
+         * its results, the other pages are read as the results are written, so
+         * that the hits held at once stay bounded by the page size
+         */
+        private class QueryTask implements Callable<PrefetchedCursor> {
+
+            private final KeywordSearchQuery query;
+
+            QueryTask(KeywordSearchQuery query) {
+                this.query = query;
+            }
+
+            @Override
+            public PrefetchedCursor call() throws Exception {
+                final KeywordQueryCursor cursor = query.performQueryPaged();
+                if (Searcher.this.isCancelled() || Thread.currentThread().isInterrupted() || !cursor.hasNextPage()) {
+                    return new PrefetchedCursor(null, null);
+                }
+                try {
+                    final Map<String, List<ContentHit>> firstPage = cursor.nextPage();
+                    return new PrefetchedCursor(firstPage, cursor, countHits());
+                } catch (NoOpenCoreException ex) {
+                    throw ex;
+                } catch (CancellationException ex) {
+                    return new PrefetchedCursor(null, null);
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Error performing query: " + query.getQueryString(), ex);
+                    return new PrefetchedCursor(null, null);
+                }
+            }
+
+            /**
+             * Count the hits of the query, to size the progress of the
+             * keyword before its pages are read
+             * @return number of hits, or 0 if they could not be counted
+             */
+            private long countHits() throws NoOpenCoreException {
+                try {
+                    return query.queryNumHits();
+                } catch (NoOpenCoreException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Error counting hits of query: " + query.getQueryString(), ex);
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Cursor over the results of a query whose first page was read ahead
+         */
+        private class PrefetchedCursor implements KeywordQueryCursor {
+
+            private Map<String, List<ContentHit>> firstPage;
+            private final KeywordQueryCursor cursor;
+            private final long numHits;
+
+            /**
+             * @param firstPage the page read ahead, or null if none
+             * @param cursor cursor to read the next pages with, or null if
+             * there are no more pages
+             */
+            PrefetchedCursor(Map<String, List<ContentHit>> firstPage, KeywordQueryCursor cursor) {
+                this(firstPage, cursor, 0);
+            }
+
+            /**
+             * @param firstPage the page read ahead, or null if none
+             * @param cursor cursor to read the next pages with, or null if
+             * there are no more pages
+             * @param numHits number of hits of the query
+             */
+            PrefetchedCursor(Map<String, List<ContentHit>> firstPage, KeywordQueryCursor cursor, long numHits) {
+                this.firstPage = firstPage;
+                this.cursor = cursor;
+                this.numHits = numHits;
+            }
+
+            /**
+             * @return number of hits of the query, 0 if unknown
+             */
+            long getNumHits() {
+                return numHits;
+            }
+
+            @Override
+            public boolean hasNextPage() {
+                return firstPage != null || (cursor != null && cursor.hasNextPage());
+            }
+
+            @Override
+            public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException {
+                if (firstPage != null) {
+                    final Map<String, List<ContentHit>> page = firstPage;
+                    firstPage = null;
+                    return page;
+                }
+                return cursor.nextPage();
+            }
+        }
+
         //perform all essential cleanup that needs to be done right AFTER doInBackground() returns
         //without relying on done() method that is not guaranteed to run after background thread completes
         //NEED to call this method always right before doInBackground() returns
@@ -1179,7 +1520,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                 logger.log(Level.INFO, "The final searcher in this ingest done.");
                 finalSearcherDone = true;
 
-                services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, KeywordSearchIngestModule.instance, "Completed"));
+                services.postMessage(IngestMessage.createMessage(messageID.incrementAndGet(), MessageType.INFO, KeywordSearchIngestModule.instance, "Completed"));
 
                 //run module cleanup
                 cleanup();
@@ -1198,6 +1539,12 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         //calculate new results but substracting results already obtained in this ingest
         //update currentResults map with the new results
         private Map<Keyword, List<ContentHit>> filterResults(Map<String, List<ContentHit>> queryResult, boolean isRegex) {
+            synchronized (currentResults) {
+                return filterCurrentResults(queryResult, isRegex);
+            }
+        }
+
+        private Map<Keyword, List<ContentHit>> filterCurrentResults(Map<String, List<ContentHit>> queryResult, boolean isRegex) {
             Map<Keyword, List<ContentHit>> newResults = new HashMap<Keyword, List<ContentHit>>();
 
             for (String termResult : queryResult.keySet()) {
@@ -41,6 +41,24 @@ public interface KeywordSearchQuery {
      */
     public Map<String,List<ContentHit>> performQuery() throws NoOpenCoreException;
     
+    /**
+     * execute query lazily and return a cursor to read results a page at a time, 
+     * without publishing them
+     * @return cursor over the results, the query is executed as pages are read
+     */
+    public KeywordQueryCursor performQueryPaged();
+    
+    /**
+     * get number of hits without retrieving them, as number of matching
+     * documents (files and file chunks) with the query filters, including the
+     * chunks referencing matching chunks
+     * for regex queries, this is the sum of the numbers of matching documents
+     * of the matching terms
+     * @throws NoOpenCoreException if query failed due to server error
+     * @return number of hits
+     */
+    public long queryNumHits() throws NoOpenCoreException;
+    
     
     /**
      * Set an optional filter to narrow down the search
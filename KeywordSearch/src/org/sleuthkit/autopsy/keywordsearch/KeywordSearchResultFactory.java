@@ -21,10 +21,15 @@ package org.sleuthkit.autopsy.keywordsearch;
 import java.awt.EventQueue;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -93,6 +98,13 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 return BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_PREVIEW.getDisplayName();
             }
         },
+        HITS {
+
+            @Override
+            public String toString() {
+                return "Hits";
+            }
+        },
     }
     private Presentation presentation;
     private List<Keyword> queries;
@@ -143,6 +155,23 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         toSet.put(typeStr, value);
     }
 
+    public static void setCommonProperty(Map<String, Object> toSet, CommonPropertyTypes type, Long value) {
+        final String typeStr = type.toString();
+        toSet.put(typeStr, value);
+    }
+
+    /**
+     * set the number of hits of the query, using a count query, so the
+     * hits themselves are only retrieved when the query node is expanded
+     */
+    private static void setNumHits(Map<String, Object> toSet, KeywordSearchQuery query) {
+        try {
+            setCommonProperty(toSet, CommonPropertyTypes.HITS, Long.valueOf(query.queryNumHits()));
+        } catch (NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Could not get number of hits for query: " + query.getQueryString(), ex);
+        }
+    }
+
     @Override
     protected boolean createKeys(List<KeyValueQuery> toPopulate) {
         int id = 0;
@@ -158,6 +187,7 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 if (it.hasNext()) {
                     kvq = it.next();
                 }
+                setNumHits(map, kvq.getQuery());
                 toPopulate.add(new KeyValueQuery(query, map, ++id, kvq.getQuery()));
             }
         } else {
@@ -168,6 +198,7 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 final String query = thing.getName();
                 setCommonProperty(map, CommonPropertyTypes.KEYWORD, query);
                 setCommonProperty(map, CommonPropertyTypes.REGEX, Boolean.valueOf(!thing.getQuery().isEscaped()));
+                setNumHits(map, thing.getQuery());
                 //toPopulate.add(new KeyValue(query, map, ++id));
                 toPopulate.add(thing);
             }
@@ -183,6 +214,11 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         if (presentation == Presentation.COLLAPSE) {
             childFactory = new ResultCollapsedChildFactory(thing);
             final Node ret = new KeyValueNode(thing, Children.create(childFactory, true));
+            //expanding runs the query and retrieves all the hits,
+            //with many keywords leave it to the user, the hit counts are already shown
+            if (things.size() > 1) {
+                return ret;
+            }
             SwingUtilities.invokeLater(new Runnable() {
 
                 @Override
@@ -208,6 +244,13 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
     class ResultCollapsedChildFactory extends ChildFactory<KeyValueQuery> {
 
         KeyValueQuery queryThing;
+        private KeywordQueryCursor cursor = null;
+        //hits of all pages read so far, shared with the file nodes
+        private final Map<String, List<ContentHit>> tcqRes = new ConcurrentHashMap<String, List<ContentHit>>();
+        private final Set<AbstractFile> shownFiles = new HashSet<AbstractFile>();
+        //term and file hits already written to bb
+        private final Set<String> writtenHits = Collections.synchronizedSet(new HashSet<String>());
+        private int resID = 0;
 
         ResultCollapsedChildFactory(KeyValueQuery queryThing) {
             this.queryThing = queryThing;
@@ -224,15 +267,23 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 return false;
             }
 
-            //execute the query and get fscontents matching
-            Map<String, List<ContentHit>> tcqRes;
+            //execute the query and get fscontents matching, a page at a time
+            if (cursor == null) {
+                cursor = tcq.performQueryPaged();
+            }
+            Map<String, List<ContentHit>> pageRes;
             try {
-                tcqRes = tcq.performQuery();
+                pageRes = cursor.nextPage();
             } catch (NoOpenCoreException ex) {
                 logger.log(Level.WARNING, "Could not perform the query. ", ex);
-                return false;
+                return true;
             }
-            final Map<AbstractFile, Integer> hitContents = ContentHit.flattenResults(tcqRes);
+            addHits(tcqRes, pageRes);
+
+            //files not shown for earlier pages
+            final Map<AbstractFile, Integer> hitContents = ContentHit.flattenResults(pageRes);
+            hitContents.keySet().removeAll(shownFiles);
+            shownFiles.addAll(hitContents.keySet());
 
             //get listname
             String listName = "";
@@ -243,49 +294,24 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
 
             final boolean literal_query = tcq.isEscaped();
 
-            int resID = 0;
+            //get the preview snippets of all file hits at once
+            final Map<AbstractFile, String> snippets;
+            try {
+                snippets = querySnippets(tcq, literal_query, pageRes, hitContents);
+            } catch (NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Could not perform the snippet query. ", ex);
+                return true;
+            }
+
             for (final AbstractFile f : hitContents.keySet()) {
                 final int previewChunk = hitContents.get(f);
                 //get unique match result files
                 Map<String, Object> resMap = new LinkedHashMap<String, Object>();
                 setCommonProperty(resMap, CommonPropertyTypes.MATCH, f.getName());
 
-                try {
-                    String snippet;
-                    
-                    String snippetQuery = null;
-
-                    if (literal_query) {
-                        snippetQuery = tcq.getEscapedQueryString();
-                    } else {
-                        //in regex, to generate the preview snippet
-                        //just pick any term that hit that file (since we are compressing result view)
-                        String hit = null;
-                        //find the first hit for this file 
-                        for (String hitKey : tcqRes.keySet()) {
-                            List<ContentHit> chits = tcqRes.get(hitKey);
-                            for (ContentHit chit : chits) {
-                                if (chit.getContent().equals(f)) {
-                                    hit = hitKey;
-                                    break;
-                                }
-                            }
-                            if (hit != null) {
-                                break;
-                            }
-                        }
-                        if (hit != null) {
-                            snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
-                        }
-                    }
-
-                    if (snippetQuery != null) {
-                        snippet = LuceneQuery.querySnippet(snippetQuery, f.getId(), previewChunk, !literal_query, true);
-                        setCommonProperty(resMap, CommonPropertyTypes.CONTEXT, snippet);
-                    }
-                } catch (NoOpenCoreException ex) {
-                    logger.log(Level.WARNING, "Could not perform the snippet query. ", ex);
-                    return false;
+                final String snippet = snippets.get(f);
+                if (snippet != null) {
+                    setCommonProperty(resMap, CommonPropertyTypes.CONTEXT, snippet);
                 }
 
                 if (f.getType() == TSK_DB_FILES_TYPE_ENUM.FS) {
@@ -299,10 +325,43 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
             //cannot reuse snippet in ResultWriter
             //because for regex searches in UI we compress results by showing a file per regex once (even if multiple term hits)
             //whereas in bb we write every hit per file separately
-            new ResultWriter(tcqRes, tcq, listName).execute();
+            new ResultWriter(pageRes, tcq, listName, writtenHits).execute();
+
+            //nodes for the page are shown before the next page is read
+            return !cursor.hasNextPage();
+        }
 
+        private Map<AbstractFile, String> querySnippets(KeywordSearchQuery tcq, boolean literal_query, Map<String, List<ContentHit>> tcqRes, Map<AbstractFile, Integer> hitContents) throws NoOpenCoreException {
+            if (literal_query) {
+                return LuceneQuery.querySnippets(tcq.getEscapedQueryString(), hitContents, false, true);
+            }
 
-            return true;
+            //in regex, to generate the preview snippet
+            //just pick any term that hit that file (since we are compressing result view)
+            //and query the snippets of all files picked for the same term together
+            Map<String, Map<AbstractFile, Integer>> termContents = new LinkedHashMap<String, Map<AbstractFile, Integer>>();
+            Set<AbstractFile> picked = new HashSet<AbstractFile>();
+            for (String hitKey : tcqRes.keySet()) {
+                for (ContentHit chit : tcqRes.get(hitKey)) {
+                    final AbstractFile f = chit.getContent();
+                    if (!hitContents.containsKey(f) || !picked.add(f)) {
+                        continue;
+                    }
+                    Map<AbstractFile, Integer> contents = termContents.get(hitKey);
+                    if (contents == null) {
+                        contents = new LinkedHashMap<AbstractFile, Integer>();
+                        termContents.put(hitKey, contents);
+                    }
+                    contents.put(f, hitContents.get(f));
+                }
+            }
+
+            Map<AbstractFile, String> snippets = new HashMap<AbstractFile, String>();
+            for (String hit : termContents.keySet()) {
+                final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
+                snippets.putAll(LuceneQuery.querySnippets(snippetQuery, termContents.get(hit), true, true));
+            }
+            return snippets;
         }
 
         private String getHighlightQuery(KeywordSearchQuery tcq, boolean literal_query, Map<String, List<ContentHit>> tcqRes, AbstractFile f) {
@@ -404,6 +463,13 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         class ResultFilesChildFactory extends ChildFactory<KeyValueQuery> {
 
             private KeyValueQuery thing;
+            private KeywordQueryCursor cursor = null;
+            //hits of all pages read so far, shared with the file nodes
+            private final Map<String, List<ContentHit>> matchesRes = new ConcurrentHashMap<String, List<ContentHit>>();
+            private final Set<AbstractFile> shownFiles = new HashSet<AbstractFile>();
+            //term and file hits already written to bb
+            private final Set<String> writtenHits = Collections.synchronizedSet(new HashSet<String>());
+            private int resID = 0;
 
             ResultFilesChildFactory(KeyValueQuery thing) {
                 this.thing = thing;
@@ -413,21 +479,25 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
             protected boolean createKeys(List<KeyValueQuery> toPopulate) {
                 //use Lucene query to get files with regular expression match result
                 final String keywordQuery = thing.getName();
-                LuceneQuery filesQuery = new LuceneQuery(keywordQuery);
-                filesQuery.escape();
+                if (cursor == null) {
+                    LuceneQuery filesQuery = new LuceneQuery(keywordQuery);
+                    filesQuery.escape();
+                    cursor = filesQuery.performQueryPaged();
+                }
 
-                Map<String, List<ContentHit>> matchesRes;
+                Map<String, List<ContentHit>> pageRes;
                 try {
-                    matchesRes = filesQuery.performQuery();
+                    pageRes = cursor.nextPage();
                 } catch (NoOpenCoreException ex) {
                     logger.log(Level.WARNING, "Could not perform the query. ", ex);
-                    return false;
+                    return true;
                 }
+                addHits(matchesRes, pageRes);
 
-                //get unique match result files
-                final Map<AbstractFile, Integer> uniqueMatches = ContentHit.flattenResults(matchesRes);
-
-                int resID = 0;
+                //get unique match result files, not shown for earlier pages
+                final Map<AbstractFile, Integer> uniqueMatches = ContentHit.flattenResults(pageRes);
+                uniqueMatches.keySet().removeAll(shownFiles);
+                shownFiles.addAll(uniqueMatches.keySet());
 
                 final KeywordSearchQuery origQuery = thing.getQuery();
 
@@ -441,9 +511,10 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
 
                 }
                 //write to bb
-                new ResultWriter(matchesRes, origQuery, "").execute();
+                new ResultWriter(pageRes, origQuery, "", writtenHits).execute();
 
-                return true;
+                //nodes for the page are shown before the next page is read
+                return !cursor.hasNextPage();
             }
 
             @Override
@@ -499,6 +570,21 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         }
     }
 
+    /**
+     * Add a page of query hits to the hits read so far. Hit lists already in
+     * the map are replaced and not modified, as they can be read by the nodes
+     * while the next page is added.
+     */
+    private static void addHits(Map<String, List<ContentHit>> allHits, Map<String, List<ContentHit>> pageHits) {
+        for (String term : pageHits.keySet()) {
+            final List<ContentHit> termHits = allHits.get(term);
+            final List<ContentHit> merged = termHits == null
+                    ? new ArrayList<ContentHit>() : new ArrayList<ContentHit>(termHits);
+            merged.addAll(pageHits.get(term));
+            allHits.put(term, merged);
+        }
+    }
+
     /**
      * worker for writing results to bb, with progress bar, cancellation, 
      * and central registry of workers to be stopped when case is closed
@@ -513,13 +599,23 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         private KeywordSearchQuery query;
         private String listName;
         private Map<String, List<ContentHit>> hits;
+        //term and file hits written by this and earlier writers of the same result
+        private final Set<String> writtenHits;
         final Collection<BlackboardArtifact> na = new ArrayList<BlackboardArtifact>();
         private static final int QUERY_DISPLAY_LEN = 40;
 
-        ResultWriter(Map<String, List<ContentHit>> hits, KeywordSearchQuery query, String listName) {
+        /**
+         * Create writer of a page of a result, that skips the term and file
+         * hits already written for earlier pages
+         *
+         * @param writtenHits term and file hits written so far, shared by the
+         * writers of all pages of the result
+         */
+        ResultWriter(Map<String, List<ContentHit>> hits, KeywordSearchQuery query, String listName, Set<String> writtenHits) {
             this.hits = hits;
             this.query = query;
             this.listName = listName;
+            this.writtenHits = writtenHits;
 
         }
 
@@ -565,20 +661,30 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                         break;
                     }
                     Map<AbstractFile, Integer> flattened = ContentHit.flattenResults(hits.get(hit));
-                    for (AbstractFile f : flattened.keySet()) {
-                        int chunkId = flattened.get(f);
-                        final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
-                        String snippet = null;
-                        try {
-                            snippet = LuceneQuery.querySnippet(snippetQuery, f.getId(), chunkId, !query.isLiteral(), true);
-                        } catch (NoOpenCoreException e) {
-                            logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e);
-                            //no reason to continie
-                            return null;
-                        } catch (Exception e) {
-                            logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e);
-                            continue;
+                    //a term can hit a file on more than one page
+                    Iterator<AbstractFile> it = flattened.keySet().iterator();
+                    while (it.hasNext()) {
+                        if (!writtenHits.add(hit + "\0" + it.next().getId())) {
+                            it.remove();
                         }
+                    }
+                    if (flattened.isEmpty()) {
+                        continue;
+                    }
+                    final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
+                    Map<AbstractFile, String> snippets = null;
+                    try {
+                        snippets = LuceneQuery.querySnippets(snippetQuery, flattened, !query.isLiteral(), true);
+                    } catch (NoOpenCoreException e) {
+                        logger.log(Level.WARNING, "Error querying snippets: " + snippetQuery, e);
+                        //no reason to continie
+                        return null;
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Error querying snippets: " + snippetQuery, e);
+                        continue;
+                    }
+                    for (AbstractFile f : flattened.keySet()) {
+                        final String snippet = snippets.get(f);
                         if (snippet != null) {
                             KeywordWriteResult written = query.writeToBlackBoard(hit, f, snippet, listName);
                             if (written != null) {
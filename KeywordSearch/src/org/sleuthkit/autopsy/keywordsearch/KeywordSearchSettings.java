@@ -90,7 +90,24 @@ public class KeywordSearchSettings {
        logger.log(Level.WARNING, "Could not read property for SkipKnown, returning backup value.");
        return skipKnown;
     }
-   
+
+    /**
+     * Sets whether new cases keep a separate index shard per image.
+     * Cases already indexed keep the index layout they were created with.
+     * @param shard
+     */
+    static void setIndexShardPerImage(boolean shard) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, "IndexShardPerImage", Boolean.toString(shard));
+    }
+
+    /**
+     * Gets the setting for whether new cases keep a separate index shard per image.
+     * @return shard setting, false by default
+     */
+    static boolean getIndexShardPerImage() {
+        return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "IndexShardPerImage"));
+    }
+
 
     
     /**
@@ -207,6 +224,11 @@ public class KeywordSearchSettings {
          logger.log(Level.INFO, "No configuration for Scripts found, generating defaults...");
          ModuleSettings.setConfigSetting(KeywordSearchSettings.PROPERTIES_SCRIPTS, SCRIPT.LATIN_1.name(), Boolean.toString(true));
         }
+        //setting default single index per case
+     if(!ModuleSettings.settingExists(KeywordSearchSettings.PROPERTIES_OPTIONS, "IndexShardPerImage")){
+         logger.log(Level.INFO, "No configuration for index shards found, generating default...");
+         KeywordSearchSettings.setIndexShardPerImage(false);
+        }
     }
     
        
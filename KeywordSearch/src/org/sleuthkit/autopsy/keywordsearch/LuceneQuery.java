@@ -20,9 +20,13 @@ package org.sleuthkit.autopsy.keywordsearch;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -53,6 +57,10 @@ public class LuceneQuery implements KeywordSearchQuery {
     private String field = null;
     private static final int MAX_RESULTS = 20000;
     static final int SNIPPET_LENGTH = 50;
+    //max documents highlighted in a single bulk snippet request
+    private static final int SNIPPETS_BATCH_SIZE = 100;
+    //max chunk ids in a single query for the chunks referencing them
+    private static final int CHUNK_REFS_BATCH_SIZE = 100;
     //can use different highlight schema fields for regex and literal search
     static final String HIGHLIGHT_FIELD_LITERAL = Server.Schema.CONTENT.toString();
     static final String HIGHLIGHT_FIELD_REGEX = Server.Schema.CONTENT.toString();
@@ -175,19 +183,40 @@ public class LuceneQuery implements KeywordSearchQuery {
     }
 
     
+    @Override
+    public long queryNumHits() throws NoOpenCoreException {
+        SolrQuery q = createQuery();
+        //identical chunks are indexed once, count the chunks referencing the matching ones too,
+        //as facet queries over the filtered documents since the references do not match the query
+        final String matchQuery = q.getQuery();
+        final String refsQuery = createReferencingChunksQuery(matchQuery);
+        q.setQuery("*:*");
+        q.addFacetQuery(matchQuery);
+        q.addFacetQuery(refsQuery);
+        q.setRows(0);
+        try {
+            final Map<String, Integer> counts = KeywordSearch.getServer().query(q, METHOD.POST).getFacetQuery();
+            if (counts == null) {
+                return 0;
+            }
+            long numHits = 0;
+            for (String countQuery : new String[]{matchQuery, refsQuery}) {
+                final Integer count = counts.get(countQuery);
+                if (count != null) {
+                    numHits += count;
+                }
+            }
+            return numHits;
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+            return 0;
+        }
+    }
+
     /**
-     * Perform the query and return result
-     * @return list of ContentHit objects
-     * @throws NoOpenCoreException
+     * helper method to create the Solr query for the matching documents
      */
-    private List<ContentHit> performLuceneQuery() throws NoOpenCoreException {
-
-        List<ContentHit> matches = new ArrayList<ContentHit>();
-
-        boolean allMatchesFetched = false;
-
-        final Server solrServer = KeywordSearch.getServer();
-
+    private SolrQuery createQuery() {
         SolrQuery q = new SolrQuery();
         q.setShowDebugInfo(DEBUG); //debug
 
@@ -202,13 +231,73 @@ public class LuceneQuery implements KeywordSearchQuery {
         }
         
         q.setQuery(theQueryStr);
-        q.setRows(MAX_RESULTS);
         q.setFields(Server.Schema.ID.toString());
         for (KeywordQueryFilter filter : filters) {
             q.addFilterQuery(filter.toString());
         }
+        return q;
+    }
+
+    @Override
+    public KeywordQueryCursor performQueryPaged() {
+        //served from the results of the same query if the index did not change since
+        final String cacheKey = QueryResultCache.getKey(LuceneQuery.class.getSimpleName(), field, queryEscaped, filters);
+        return QueryResultCache.getDefault().getCursor(cacheKey, new LuceneQueryCursor());
+    }
+
+    /**
+     * Perform the query and return result
+     * @return list of ContentHit objects
+     * @throws NoOpenCoreException
+     */
+    private List<ContentHit> performLuceneQuery() throws NoOpenCoreException {
+
+        List<ContentHit> matches = new ArrayList<ContentHit>();
+
+        final KeywordQueryCursor cursor = performQueryPaged();
+        while (cursor.hasNextPage()) {
+            for (List<ContentHit> pageMatches : cursor.nextPage().values()) {
+                matches.addAll(pageMatches);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Cursor reading the matching documents a page of MAX_RESULTS at a time
+     */
+    private class LuceneQueryCursor implements KeywordQueryCursor {
+
+        private final SolrQuery q;
+        private int start = 0;
+        private boolean allMatchesFetched = false;
+
+        LuceneQueryCursor() {
+            q = createQuery();
+            q.setRows(MAX_RESULTS);
+        }
+
+        @Override
+        public boolean hasNextPage() {
+            return !allMatchesFetched;
+        }
 
-        for (int start = 0; !allMatchesFetched; start = start + MAX_RESULTS) {
+        @Override
+        public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException {
+            Map<String, List<ContentHit>> results = new HashMap<String, List<ContentHit>>();
+            //in case of single term literal query there is only 1 term
+            results.put(query, nextMatches());
+            return results;
+        }
+
+        private List<ContentHit> nextMatches() throws NoOpenCoreException {
+            List<ContentHit> matches = new ArrayList<ContentHit>();
+            if (allMatchesFetched) {
+                return matches;
+            }
+
+            final Server solrServer = KeywordSearch.getServer();
             q.setStart(start);
 
             try {
@@ -216,68 +305,215 @@ public class LuceneQuery implements KeywordSearchQuery {
                 SolrDocumentList resultList = response.getResults();
                 long results = resultList.getNumFound();
                 allMatchesFetched = start + MAX_RESULTS >= results;
+                start = start + MAX_RESULTS;
                 SleuthkitCase sc = null;
                 try {
                     sc = Case.getCurrentCase().getSleuthkitCase();
                 } catch (IllegalStateException ex) {
                     //no case open, must be just closed
+                    allMatchesFetched = true;
                     return matches;
                 }
 
+                List<String> resultIDs = new ArrayList<String>();
                 for (SolrDocument resultDoc : resultList) {
-                    final String resultID = (String) resultDoc.getFieldValue(Server.Schema.ID.toString());
+                    resultIDs.add((String) resultDoc.getFieldValue(Server.Schema.ID.toString()));
+                }
+                //identical chunks are indexed once, add the chunks referencing the matching ones
+                for (List<String> refIDs : queryReferencingChunks(resultIDs, filters).values()) {
+                    resultIDs.addAll(refIDs);
+                }
+                try {
+                    matches.addAll(createContentHits(sc, resultIDs).values());
+                } catch (TskException ex) {
+                    logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
+                    //something wrong with case/db
+                    allMatchesFetched = true;
+                    return matches;
+                }
 
-                    final int sepIndex = resultID.indexOf(Server.ID_CHUNK_SEP);
 
-                    if (sepIndex != -1) {
-                        //file chunk result
-                        final long fileID = Long.parseLong(resultID.substring(0, sepIndex));
-                        final int chunkId = Integer.parseInt(resultID.substring(sepIndex + 1));
-                        //logger.log(Level.INFO, "file id: " + fileID + ", chunkID: " + chunkId);
+            } catch (NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+                allMatchesFetched = true;
+                throw ex;
+            } catch (KeywordSearchModuleException ex) {
+                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+                allMatchesFetched = true;
+            }
 
-                        try {
-                            AbstractFile resultAbstractFile = sc.getAbstractFileById(fileID);
-                            matches.add(new ContentHit(resultAbstractFile, chunkId));
+            return matches;
+        }
+    }
 
-                        } catch (TskException ex) {
-                            logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
-                            //something wrong with case/db
-                            return matches;
-                        }
+    /**
+     * Create content hits from ids of the Solr documents that matched, looking
+     * up all the files at once
+     * @param sc case to look up the files in
+     * @param resultIDs Solr document ids, either file ids or file chunk ids
+     * @return content hits for the files by document id, in the document order,
+     * with the chunk id set if a chunk matched
+     * @throws TskException if the files could not be retrieved
+     */
+    static Map<String, ContentHit> createContentHits(SleuthkitCase sc, List<String> resultIDs) throws TskException {
+        final int numResults = resultIDs.size();
+        long[] fileIDs = new long[numResults];
+        int[] chunkIDs = new int[numResults];
+        List<Long> uniqueFileIDs = new ArrayList<Long>();
+        for (int i = 0; i < numResults; ++i) {
+            final String resultID = resultIDs.get(i);
+            final int sepIndex = resultID.indexOf(Server.ID_CHUNK_SEP);
+            if (sepIndex != -1) {
+                //file chunk result
+                fileIDs[i] = Long.parseLong(resultID.substring(0, sepIndex));
+                chunkIDs[i] = Integer.parseInt(resultID.substring(sepIndex + 1));
+            } else {
+                fileIDs[i] = Long.parseLong(resultID);
+            }
+            uniqueFileIDs.add(fileIDs[i]);
+        }
+
+        final Map<Long, AbstractFile> files = AbstractFileCache.getDefault().getFiles(sc, uniqueFileIDs);
+
+        Map<String, ContentHit> hits = new LinkedHashMap<String, ContentHit>();
+        for (int i = 0; i < numResults; ++i) {
+            final AbstractFile file = files.get(fileIDs[i]);
+            if (file == null) {
+                logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, file id: " + fileIDs[i]);
+                continue;
+            }
+            if (chunkIDs[i] != 0) {
+                hits.put(resultIDs.get(i), new ContentHit(file, chunkIDs[i]));
+            } else {
+                hits.put(resultIDs.get(i), new ContentHit(file));
+            }
+        }
+        return hits;
+    }
 
-                    } else {
-                        final long fileID = Long.parseLong(resultID);
+    /**
+     * Create the query for the chunks with the same text as the chunks
+     * matching the query, indexed as references to them (see
+     * Server.Schema.CHUNK_REF). A chunk only references a chunk of the same
+     * image, so the join does not span index shards, see ChunkDigestIndex.
+     * @param query query for the matching documents
+     * @return query for the referencing chunks
+     */
+    static String createReferencingChunksQuery(String query) {
+        return "{!join from=" + Server.Schema.ID.toString() + " to=" + Server.Schema.CHUNK_REF.toString() + "}" + query;
+    }
 
-                        try {
-                            AbstractFile resultAbstractFile = sc.getAbstractFileById(fileID);
-                            matches.add(new ContentHit(resultAbstractFile));
-                        } catch (TskException ex) {
-                            logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
-                            //something wrong with case/db
-                            return matches;
+    /**
+     * Get the chunks with the same text as the matching chunks, indexed as
+     * references to them (see Server.Schema.CHUNK_REF)
+     * @param resultIDs Solr document ids that matched
+     * @param filters filters of the query, applied to the referencing chunks
+     * @return ids of the referencing chunks, by id of the referenced chunk,
+     * only for the chunks that are referenced
+     * @throws NoOpenCoreException
+     */
+    static Map<String, List<String>> queryReferencingChunks(List<String> resultIDs, List<KeywordQueryFilter> filters) throws NoOpenCoreException {
+        Map<String, List<String>> refs = new HashMap<String, List<String>>();
+        //only chunks are deduplicated
+        List<String> chunkIDs = new ArrayList<String>();
+        for (String resultID : resultIDs) {
+            if (resultID.indexOf(Server.ID_CHUNK_SEP) != -1) {
+                chunkIDs.add(resultID);
+            }
+        }
+
+        final Server solrServer = KeywordSearch.getServer();
+        for (int i = 0; i < chunkIDs.size(); i += CHUNK_REFS_BATCH_SIZE) {
+            final List<String> batch = chunkIDs.subList(i, Math.min(chunkIDs.size(), i + CHUNK_REFS_BATCH_SIZE));
+            SolrQuery q = new SolrQuery();
+            q.setQuery(Server.Schema.CHUNK_REF.toString() + ":(" + joinIDs(batch) + ")");
+            q.setFields(Server.Schema.ID.toString(), Server.Schema.CHUNK_REF.toString());
+            for (KeywordQueryFilter filter : filters) {
+                q.addFilterQuery(filter.toString());
+            }
+            q.setRows(MAX_RESULTS);
+            int start = 0;
+            long numFound = 0;
+            do {
+                q.setStart(start);
+                try {
+                    SolrDocumentList refDocs = solrServer.query(q, METHOD.POST).getResults();
+                    numFound = refDocs.getNumFound();
+                    for (SolrDocument refDoc : refDocs) {
+                        final String refIDStr = (String) refDoc.getFieldValue(Server.Schema.CHUNK_REF.toString());
+                        List<String> refIDs = refs.get(refIDStr);
+                        if (refIDs == null) {
+                            refIDs = new ArrayList<String>();
+                            refs.put(refIDStr, refIDs);
                         }
+                        refIDs.add((String) refDoc.getFieldValue(Server.Schema.ID.toString()));
                     }
-
+                } catch (KeywordSearchModuleException ex) {
+                    logger.log(Level.WARNING, "Error executing Solr query for referencing chunks", ex);
+                    break;
                 }
+                start += MAX_RESULTS;
+            } while (start < numFound);
+        }
+        return refs;
+    }
 
+    /**
+     * Get the chunks referenced by the given documents, if they are chunks
+     * with the same text as a chunk indexed before, so that the text can be
+     * highlighted in the referenced chunk
+     * @param contentIDStrs Solr document ids
+     * @return id of the referenced chunk, by id of the referencing document,
+     * only for the documents that are references
+     * @throws NoOpenCoreException
+     */
+    static Map<String, String> queryReferencedChunks(Collection<String> contentIDStrs) throws NoOpenCoreException {
+        Map<String, String> refs = new HashMap<String, String>();
+        //only chunks are deduplicated
+        List<String> chunkIDs = new ArrayList<String>();
+        for (String contentIDStr : contentIDStrs) {
+            if (contentIDStr.indexOf(Server.ID_CHUNK_SEP) != -1) {
+                chunkIDs.add(contentIDStr);
+            }
+        }
 
-            } catch (NoOpenCoreException ex) {
-                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
-                throw ex;
+        final Server solrServer = KeywordSearch.getServer();
+        for (int i = 0; i < chunkIDs.size(); i += CHUNK_REFS_BATCH_SIZE) {
+            final List<String> batch = chunkIDs.subList(i, Math.min(chunkIDs.size(), i + CHUNK_REFS_BATCH_SIZE));
+            SolrQuery q = new SolrQuery("*:*");
+            q.addFilterQuery(Server.Schema.ID.toString() + ":(" + joinIDs(batch) + ")");
+            q.addFilterQuery(Server.Schema.CHUNK_REF.toString() + ":[* TO *]");
+            q.setFields(Server.Schema.ID.toString(), Server.Schema.CHUNK_REF.toString());
+            q.setRows(batch.size());
+            try {
+                for (SolrDocument refDoc : solrServer.query(q, METHOD.POST).getResults()) {
+                    refs.put((String) refDoc.getFieldValue(Server.Schema.ID.toString()),
+                            (String) refDoc.getFieldValue(Server.Schema.CHUNK_REF.toString()));
+                }
             } catch (KeywordSearchModuleException ex) {
-                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+                logger.log(Level.WARNING, "Error executing Solr query for referenced chunks", ex);
             }
+        }
+        return refs;
+    }
 
+    private static String joinIDs(List<String> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (String id : ids) {
+            if (sb.length() > 0) {
+                sb.append(" OR ");
+            }
+            sb.append(id);
         }
-        return matches;
+        return sb.toString();
     }
 
     /**
      * return snippet preview context
      * @param query the keyword query for text to highlight. Lucene special cahrs should already be escaped.
      * @param contentID content id associated with the file
-     * @param isRegex whether the query is a regular expression (different Solr fields are then used to generate the preview)
-     * @param group whether the query should look for all terms grouped together in the query order, or not
+     * @param isRegex whether the query is a regular expression, the hit is then previewed as a whole whitespace delimited token, as indexed in the content_ws field
+     * @param group whether the Solr highlighter should look for all terms grouped together in the query order, or not, for documents with the text stored in Solr
      * @return 
      */
     public static String querySnippet(String query, long contentID, boolean isRegex, boolean group) throws NoOpenCoreException {
@@ -289,19 +525,135 @@ public class LuceneQuery implements KeywordSearchQuery {
      * @param query the keyword query for text to highlight. Lucene special cahrs should already be escaped.
      * @param contentID content id associated with the hit
      * @param chunkID chunk id associated with the content hit, or 0 if no chunks
-     * @param isRegex whether the query is a regular expression (different Solr fields are then used to generate the preview)
-     * @param group whether the query should look for all terms grouped together in the query order, or not
+     * @param isRegex whether the query is a regular expression, the hit is then previewed as a whole whitespace delimited token, as indexed in the content_ws field
+     * @param group whether the Solr highlighter should look for all terms grouped together in the query order, or not, for documents with the text stored in Solr
      * @return 
      */
     public static String querySnippet(String query, long contentID, int chunkID, boolean isRegex, boolean group) throws NoOpenCoreException {
+        final String contentIDStr = getContentIdString(contentID, chunkID);
+        return querySnippets(query, Collections.singletonList(contentIDStr), isRegex, group).get(contentIDStr);
+    }
+
+    /**
+     * return snippet preview contexts for many content hits of the same
+     * query, using a single highlighting request for a batch of hits
+     * @param query the keyword query for text to highlight. Lucene special cahrs should already be escaped.
+     * @param contentChunks content hits, with chunk id associated with each content hit, or 0 if no chunks
+     * @param isRegex whether the query is a regular expression, the hit is then previewed as a whole whitespace delimited token, as indexed in the content_ws field
+     * @param group whether the Solr highlighter should look for all terms grouped together in the query order, or not, for documents with the text stored in Solr
+     * @return snippet for every content in contentChunks, empty snippet if none could be found
+     */
+    public static Map<AbstractFile, String> querySnippets(String query, Map<AbstractFile, Integer> contentChunks, boolean isRegex, boolean group) throws NoOpenCoreException {
+        Map<String, AbstractFile> contentIDStrs = new LinkedHashMap<String, AbstractFile>();
+        for (Map.Entry<AbstractFile, Integer> contentChunk : contentChunks.entrySet()) {
+            contentIDStrs.put(getContentIdString(contentChunk.getKey().getId(), contentChunk.getValue()), contentChunk.getKey());
+        }
+
+        final Map<String, String> idSnippets = querySnippets(query, new ArrayList<String>(contentIDStrs.keySet()), isRegex, group);
+        Map<AbstractFile, String> snippets = new HashMap<AbstractFile, String>();
+        for (Map.Entry<String, AbstractFile> entry : contentIDStrs.entrySet()) {
+            snippets.put(entry.getValue(), idSnippets.get(entry.getKey()));
+        }
+        return snippets;
+    }
+
+    /**
+     * Make the snippets of the documents from their text in the text store,
+     * or with the Solr highlighter for an index with the text stored in Solr,
+     * on the highlight field of the query type
+     * @return snippet by document id, empty snippet if none could be found
+     */
+    private static Map<String, String> querySnippets(String query, List<String> contentIDStrs, boolean isRegex, boolean group) throws NoOpenCoreException {
         Server solrServer = KeywordSearch.getServer();
+        Map<String, String> snippets = new HashMap<String, String>();
+        final TextHighlighter highlighter = new TextHighlighter(query, isRegex);
+
+        List<String> notStoredIDStrs = new ArrayList<String>();
+        for (String contentIDStr : contentIDStrs) {
+            final String text = solrServer.getExtractedText(contentIDStr);
+            if (text != null) {
+                snippets.put(contentIDStr, highlighter.getSnippet(text));
+            } else {
+                notStoredIDStrs.add(contentIDStr);
+            }
+        }
+        if (notStoredIDStrs.isEmpty()) {
+            return snippets;
+        }
 
-        String highlightField = null;
+        //the text of chunks indexed as references is in the referenced chunks
+        final Map<String, String> refIDStrs = queryReferencedChunks(notStoredIDStrs);
+        List<String> solrIDStrs = new ArrayList<String>();
+        for (String contentIDStr : notStoredIDStrs) {
+            final String refIDStr = refIDStrs.get(contentIDStr);
+            final String text = refIDStr != null ? solrServer.getExtractedText(refIDStr) : null;
+            if (text != null) {
+                snippets.put(contentIDStr, highlighter.getSnippet(text));
+            } else {
+                solrIDStrs.add(contentIDStr);
+            }
+        }
+
+        //text stored in Solr, highlight with Solr
+        final String highlightField = getHighlightField(isRegex);
+        for (int i = 0; i < solrIDStrs.size(); i += SNIPPETS_BATCH_SIZE) {
+            final List<String> batch = solrIDStrs.subList(i, Math.min(solrIDStrs.size(), i + SNIPPETS_BATCH_SIZE));
+            SolrQuery q = createSnippetQuery(query, isRegex, group);
+
+            Set<String> highlightIDStrs = new LinkedHashSet<String>();
+            for (String contentIDStr : batch) {
+                final String refIDStr = refIDStrs.get(contentIDStr);
+                highlightIDStrs.add(refIDStr != null ? refIDStr : contentIDStr);
+            }
+            q.addFilterQuery(Server.Schema.ID.toString() + ":(" + joinIDs(new ArrayList<String>(highlightIDStrs)) + ")");
+            //highlighting is only done for the returned documents
+            q.setRows(highlightIDStrs.size());
+            q.setFields(Server.Schema.ID.toString());
+
+            Map<String, Map<String, List<String>>> responseHighlight = null;
+            try {
+                //id list can be too long for GET
+                QueryResponse response = solrServer.query(q, METHOD.POST);
+                responseHighlight = response.getHighlighting();
+            } catch (NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+                throw ex;
+            } catch (KeywordSearchModuleException ex) {
+                logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+            }
+
+            for (String contentIDStr : batch) {
+                final String refIDStr = refIDStrs.get(contentIDStr);
+                final String highlightIDStr = refIDStr != null ? refIDStr : contentIDStr;
+                snippets.put(contentIDStr, getSnippet(responseHighlight, highlightIDStr, highlightField));
+            }
+        }
+
+        return snippets;
+    }
+
+    private static String getHighlightField(boolean isRegex) {
         if (isRegex) {
-            highlightField = LuceneQuery.HIGHLIGHT_FIELD_REGEX;
+            return LuceneQuery.HIGHLIGHT_FIELD_REGEX;
         } else {
-            highlightField = LuceneQuery.HIGHLIGHT_FIELD_LITERAL;
+            return LuceneQuery.HIGHLIGHT_FIELD_LITERAL;
         }
+    }
+
+    private static String getContentIdString(long contentID, int chunkID) {
+        if (chunkID == 0) {
+            return Long.toString(contentID);
+        } else {
+            return Server.getChunkIdString(contentID, chunkID);
+        }
+    }
+
+    /**
+     * helper method to create the highlighting query for snippets, without
+     * the document filter
+     */
+    private static SolrQuery createSnippetQuery(String query, boolean isRegex, boolean group) {
+        final String highlightField = getHighlightField(isRegex);
 
         SolrQuery q = new SolrQuery();
 
@@ -327,17 +679,7 @@ public class LuceneQuery implements KeywordSearchQuery {
         
         q.setQuery(queryStr);
 
-        String contentIDStr = null;
-
-        if (chunkID == 0) {
-            contentIDStr = Long.toString(contentID);
-        } else {
-            contentIDStr = Server.getChunkIdString(contentID, chunkID);
-        }
-
-        String idQuery = Server.Schema.ID.toString() + ":" + contentIDStr;
         q.setShowDebugInfo(DEBUG); //debug
-        q.addFilterQuery(idQuery);
         q.addHighlightField(highlightField);
         //q.setHighlightSimplePre("&laquo;"); //original highlighter only
         //q.setHighlightSimplePost("&raquo;");  //original highlighter only
@@ -359,26 +701,27 @@ public class LuceneQuery implements KeywordSearchQuery {
         //analyze all content SLOW! consider lowering
         q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED); 
 
-        try {
-            QueryResponse response = solrServer.query(q);
-            Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
-            Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIDStr);
-            if (responseHighlightID == null) {
-                return "";
-            }
-            List<String> contentHighlights = responseHighlightID.get(highlightField);
-            if (contentHighlights == null) {
-                return "";
-            } else {
-                // extracted content is HTML-escaped, but snippet goes in a plain text field
-                return EscapeUtil.unEscapeHtml(contentHighlights.get(0)).trim();
-            }
-        } catch (NoOpenCoreException ex) {
-            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
-            throw ex;
-        } catch (KeywordSearchModuleException ex) {
-            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
+        return q;
+    }
+
+    /**
+     * get the snippet for the document from the highlighting response
+     * @return the snippet, or empty string if there is none
+     */
+    private static String getSnippet(Map<String, Map<String, List<String>>> responseHighlight, String contentIDStr, String highlightField) {
+        if (responseHighlight == null) {
             return "";
         }
+        Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIDStr);
+        if (responseHighlightID == null) {
+            return "";
+        }
+        List<String> contentHighlights = responseHighlightID.get(highlightField);
+        if (contentHighlights == null) {
+            return "";
+        } else {
+            // extracted content is HTML-escaped, but snippet goes in a plain text field
+            return EscapeUtil.unEscapeHtml(contentHighlights.get(0)).trim();
+        }
     }
 }
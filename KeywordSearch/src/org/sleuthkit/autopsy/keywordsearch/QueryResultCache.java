@@ -0,0 +1,230 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of complete keyword query results, keyed by the
+ * normalized query and its filters. All cached results belong to the current
+ * index generation, and are dropped as soon as the index changes, so
+ * repeating a search on an index that did not change returns at once.
+ *
+ * The cache is cleared when the case is closed.
+ */
+class QueryResultCache {
+
+    //max total hits of the cached results
+    private static final int MAX_CACHED_HITS = 100000;
+    //results with more hits are not cached
+    private static final int MAX_RESULT_HITS = MAX_CACHED_HITS / 4;
+    private static QueryResultCache instance;
+    private final LinkedHashMap<String, CachedResult> cache = new LinkedHashMap<String, CachedResult>(16, 0.75f, true);
+    private int cachedHits = 0;
+    //index generation of the cached results
+    private long generation = -1;
+
+    private QueryResultCache() {
+    }
+
+    static synchronized QueryResultCache getDefault() {
+        if (instance == null) {
+            instance = new QueryResultCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Drop all cached results, e.g. when the case is closed
+     */
+    synchronized void clear() {
+        cache.clear();
+        cachedHits = 0;
+    }
+
+    /**
+     * Get a cursor over the results of the query, replaying the cached
+     * results if the query already ran on the current index, or reading the
+     * results with the query cursor and caching them once all pages were read
+     *
+     * @param key normalized query and filters
+     * @param queryCursor cursor running the query, not used if the results
+     * are cached
+     * @return cursor over the query results
+     */
+    KeywordQueryCursor getCursor(String key, KeywordQueryCursor queryCursor) {
+        final long currentGeneration = KeywordSearch.getServer().getIndexGeneration();
+        final CachedResult cached = get(key, currentGeneration);
+        if (cached != null) {
+            return new CachedResultCursor(cached);
+        }
+        return new RecordingCursor(key, currentGeneration, queryCursor);
+    }
+
+    /**
+     * Create the cache key of a query
+     *
+     * @param queryType type of the query, such as its class name
+     * @param field optional field searched, or null
+     * @param query query string as sent to Solr
+     * @param filters filters of the query
+     * @return normalized key of the query and filters
+     */
+    static String getKey(String queryType, String field, String query, List<KeywordQueryFilter> filters) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(queryType).append("\n");
+        if (field != null) {
+            sb.append(field);
+        }
+        sb.append("\n").append(query);
+        for (KeywordQueryFilter filter : filters) {
+            sb.append("\n").append(filter.toString());
+        }
+        return sb.toString();
+    }
+
+    private synchronized CachedResult get(String key, long currentGeneration) {
+        checkGeneration(currentGeneration);
+        return cache.get(key);
+    }
+
+    private synchronized void put(String key, long startGeneration, CachedResult result) {
+        checkGeneration(KeywordSearch.getServer().getIndexGeneration());
+        if (startGeneration != generation) {
+            //index changed while the query ran
+            return;
+        }
+        final CachedResult old = cache.put(key, result);
+        if (old != null) {
+            cachedHits -= old.numHits;
+        }
+        cachedHits += result.numHits;
+        //evict least recently used results over the limit
+        Iterator<CachedResult> it = cache.values().iterator();
+        while (cachedHits > MAX_CACHED_HITS && it.hasNext()) {
+            cachedHits -= it.next().numHits;
+            it.remove();
+        }
+    }
+
+    private void checkGeneration(long currentGeneration) {
+        if (currentGeneration != generation) {
+            clear();
+            generation = currentGeneration;
+        }
+    }
+
+    /**
+     * Complete results of a query, hits per term
+     */
+    private static class CachedResult {
+
+        private final Map<String, List<ContentHit>> hits;
+        private final int numHits;
+
+        CachedResult(Map<String, List<ContentHit>> hits, int numHits) {
+            this.hits = hits;
+            this.numHits = numHits;
+        }
+    }
+
+    /**
+     * Cursor returning the cached results as a single page
+     */
+    private static class CachedResultCursor implements KeywordQueryCursor {
+
+        private CachedResult result;
+
+        CachedResultCursor(CachedResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+            return result != null;
+        }
+
+        @Override
+        public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException {
+            Map<String, List<ContentHit>> page = new LinkedHashMap<String, List<ContentHit>>();
+            if (result == null) {
+                return page;
+            }
+            //copy, so that the cached results are not changed by the caller
+            for (Map.Entry<String, List<ContentHit>> termHits : result.hits.entrySet()) {
+                page.put(termHits.getKey(), new ArrayList<ContentHit>(termHits.getValue()));
+            }
+            result = null;
+            return page;
+        }
+    }
+
+    /**
+     * Cursor reading the results with the query cursor, and caching them if
+     * all pages were read and the results are not too large
+     */
+    private class RecordingCursor implements KeywordQueryCursor {
+
+        private final String key;
+        private final long startGeneration;
+        private final KeywordQueryCursor queryCursor;
+        //hits read so far, or null if the results are too large to cache
+        private Map<String, List<ContentHit>> hits = new LinkedHashMap<String, List<ContentHit>>();
+        private int numHits = 0;
+
+        RecordingCursor(String key, long startGeneration, KeywordQueryCursor queryCursor) {
+            this.key = key;
+            this.startGeneration = startGeneration;
+            this.queryCursor = queryCursor;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+            return queryCursor.hasNextPage();
+        }
+
+        @Override
+        public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException {
+            final Map<String, List<ContentHit>> page = queryCursor.nextPage();
+            if (hits == null) {
+                return page;
+            }
+            for (Map.Entry<String, List<ContentHit>> termHits : page.entrySet()) {
+                numHits += termHits.getValue().size();
+                List<ContentHit> recorded = hits.get(termHits.getKey());
+                if (recorded == null) {
+                    recorded = new ArrayList<ContentHit>();
+                    hits.put(termHits.getKey(), recorded);
+                }
+                recorded.addAll(termHits.getValue());
+            }
+            if (numHits > MAX_RESULT_HITS) {
+                hits = null;
+            } else if (!queryCursor.hasNextPage()) {
+                put(key, startGeneration, new CachedResult(hits, numHits));
+                hits = null;
+            }
+            return page;
+        }
+    }
+}
@@ -33,6 +33,18 @@ import java.net.ConnectException;
 import java.net.ServerSocket;
 import java.net.SocketException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import javax.swing.AbstractAction;
@@ -40,10 +52,15 @@ import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
+import org.apache.solr.client.solrj.request.LukeRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ContentStream;
 import org.apache.solr.common.util.NamedList;
 import org.openide.modules.InstalledFileLocator;
 import org.openide.modules.Places;
@@ -52,7 +69,9 @@ import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.coreutils.PlatformUtil;
 import org.sleuthkit.autopsy.coreutils.Version;
+import org.sleuthkit.autopsy.keywordsearch.SolrRequestStats.RequestType;
 import org.sleuthkit.datamodel.Content;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
 
@@ -87,6 +106,12 @@ public class Server {
                 return "content_ws";
             }
         },
+        CONTENT_INDEXED {
+            @Override
+            public String toString() {
+                return "content_indexed";
+            }
+        },
         FILE_NAME {
             @Override
             public String toString() {
@@ -123,12 +148,19 @@ public class Server {
                 return "num_chunks";
             }
         },
+        CHUNK_REF {
+            @Override
+            public String toString() {
+                return "chunk_ref";
+            }
+        },
     };
     public static final String HL_ANALYZE_CHARS_UNLIMITED = "500000"; //max 1MB in a chunk. use -1 for unlimited, but -1 option may not be supported (not documented)
     //max content size we can send to Solr
     public static final long MAX_CONTENT_SIZE = 1L * 1024 * 1024 * 1024;
     private static final Logger logger = Logger.getLogger(Server.class.getName());
     private static final String DEFAULT_CORE_NAME = "coreCase";
+    private static final String SHARD_DIR_PREFIX = "image";
     // TODO: DEFAULT_CORE_NAME needs to be replaced with unique names to support multiple open cases
     public static final String CORE_EVT = "CORE_EVT";
     public static final char ID_CHUNK_SEP = '_';
@@ -157,6 +189,7 @@ public class Server {
     private ServerAction serverAction;
     private InputStreamPrinterThread errorRedirectThread;
     private String solrUrl;
+    private final SolrRequestStats requestStats = SolrRequestStats.getDefault();
 
     /**
      * New instance for the server at the given URL
@@ -464,13 +497,62 @@ public class Server {
      * ** Convenience methods for use while we only open one case at a time ***
      */
     private volatile Core currentCore = null;
+    //changes every time the searchable index changes, on commit and core swap
+    private volatile long indexGeneration = 0;
+    //text of the documents of the current core, not stored in Solr
+    private volatile ExtractedTextStore textStore = null;
+    //time of the last search, text request or indexing, to tell when the index is idle
+    private volatile long lastActivityTime = System.currentTimeMillis();
+
+    //per-image shard cores of the current case, by image id, if the case
+    //index is sharded, replaced as a whole when a shard is added
+    private volatile Map<Long, Core> shardCores = Collections.<Long, Core>emptyMap();
+    //directory of the shards of the current case, or null if not sharded
+    private File shardsDir = null;
+    private final Object shardsLock = new Object();
+    //commits the shards in parallel
+    private final ExecutorService shardExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Keyword search shard commit");
+            t.setDaemon(true);
+            return t;
+        }
+    });
 
     synchronized void openCore() throws KeywordSearchModuleException {
         if (currentCore != null) {
             throw new KeywordSearchModuleException("Already an open Core! Explicitely close Core first. ");
         }
 
-        currentCore = openCore(Case.getCurrentCase());
+        final Case currentCase = Case.getCurrentCase();
+        //checked before the case core creates its index
+        final boolean sharded = isShardedIndex(currentCase);
+        final ExtractedTextStore store = openTextStore(currentCase);
+        try {
+            currentCore = openCore(currentCase);
+        } catch (KeywordSearchModuleException ex) {
+            store.close();
+            throw ex;
+        }
+        try {
+            if (sharded) {
+                openShards(currentCase);
+            }
+        } catch (KeywordSearchModuleException ex) {
+            closeShards();
+            try {
+                currentCore.close();
+            } catch (KeywordSearchModuleException closeEx) {
+                //report the shard open error
+                logger.log(Level.WARNING, "Could not close core after index shards failed to open", closeEx);
+            }
+            currentCore = null;
+            store.close();
+            throw ex;
+        }
+        textStore = store;
+        ++indexGeneration;
         serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STARTED);
     }
 
@@ -478,13 +560,186 @@ public class Server {
         if (currentCore == null) {
             return;
         }
+        closeShards();
         currentCore.close();
         currentCore = null;
+        if (textStore != null) {
+            textStore.close();
+            textStore = null;
+        }
+        ++indexGeneration;
         serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STOPPED);
     }
 
     void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
-        currentCore.addDocument(doc);
+        lastActivityTime = System.currentTimeMillis();
+        getIndexingCore(doc.getFieldValue(Schema.IMAGE_ID.toString())).addDocument(doc);
+    }
+
+    /**
+     * Check if the index of the case is sharded by image. A new case is
+     * sharded if set in the options, a case indexed before keeps its index
+     * layout. In a sharded case, the case core holds no documents and
+     * distributes the queries to the shards.
+     */
+    private static boolean isShardedIndex(Case c) {
+        String sep = File.separator;
+        final String indexDir = c.getCaseDirectory() + sep + "keywordsearch";
+        if (new File(indexDir + sep + "shards").isDirectory()) {
+            return true;
+        }
+        final boolean caseIndexed = new File(indexDir + sep + "data" + sep + "index").exists();
+        return !caseIndexed && KeywordSearchSettings.getIndexShardPerImage();
+    }
+
+    /**
+     * Open the shard cores of the images of the case indexed so far
+     */
+    private void openShards(Case c) throws KeywordSearchModuleException {
+        String sep = File.separator;
+        final File dir = new File(c.getCaseDirectory() + sep + "keywordsearch" + sep + "shards");
+        synchronized (shardsLock) {
+            dir.mkdirs();
+            shardsDir = dir;
+            final File[] imageDirs = dir.listFiles();
+            if (imageDirs == null) {
+                return;
+            }
+            for (File imageDir : imageDirs) {
+                final String name = imageDir.getName();
+                if (!imageDir.isDirectory() || !name.startsWith(SHARD_DIR_PREFIX)) {
+                    continue;
+                }
+                try {
+                    addShard(Long.parseLong(name.substring(SHARD_DIR_PREFIX.length())));
+                } catch (NumberFormatException ex) {
+                    logger.log(Level.WARNING, "Skipping unexpected directory in index shards: " + imageDir);
+                }
+            }
+            logger.log(Level.INFO, "Opened case index sharded by image, shards: " + shardCores.size());
+        }
+    }
+
+    private void closeShards() {
+        synchronized (shardsLock) {
+            for (Core shard : shardCores.values()) {
+                try {
+                    shard.close();
+                } catch (KeywordSearchModuleException ex) {
+                    logger.log(Level.WARNING, "Could not close index shard core", ex);
+                }
+            }
+            shardCores = Collections.<Long, Core>emptyMap();
+            shardsDir = null;
+        }
+    }
+
+    /**
+     * Get the core to add a document of an image to, the shard of the image
+     * if the case index is sharded, opened the first time the image is
+     * indexed
+     *
+     * @param imageId id of the image of the document, as set in the document
+     * fields
+     * @return the core to index to
+     */
+    private Core getIndexingCore(Object imageId) throws KeywordSearchModuleException {
+        final Core core = currentCore;
+        if (core == null || imageId == null) {
+            return core;
+        }
+        final long id = Long.parseLong(imageId.toString());
+        Core shard = shardCores.get(id);
+        if (shard != null) {
+            return shard;
+        }
+        synchronized (shardsLock) {
+            if (shardsDir == null) {
+                return core;
+            }
+            shard = shardCores.get(id);
+            if (shard == null) {
+                shard = addShard(id);
+                logger.log(Level.INFO, "Opened new index shard for image: " + id);
+            }
+            return shard;
+        }
+    }
+
+    /**
+     * Open the shard core of an image and add it to the shards the queries
+     * of the case core are distributed to
+     */
+    private Core addShard(long imageId) throws KeywordSearchModuleException {
+        final String coreName = DEFAULT_CORE_NAME + "_" + SHARD_DIR_PREFIX + imageId;
+        final Core shard = openCore(coreName, new File(shardsDir, SHARD_DIR_PREFIX + imageId + File.separator + "data"));
+        final Map<Long, Core> shards = new LinkedHashMap<Long, Core>(shardCores);
+        shards.put(imageId, shard);
+        shardCores = shards;
+
+        final StringBuilder shardList = new StringBuilder();
+        final String solrHostUrl = solrUrl.substring("http://".length());
+        for (Core s : shards.values()) {
+            if (shardList.length() > 0) {
+                shardList.append(",");
+            }
+            shardList.append(solrHostUrl).append("/").append(s.name);
+        }
+        currentCore.shards = shardList.toString();
+        return shard;
+    }
+
+    /**
+     * Store the extracted text of a document, the content_indexed field is
+     * indexed but not stored in Solr
+     *
+     * @param idStr id of the document, file id or chunk id string
+     * @param text the text added to the index
+     * @throws KeywordSearchModuleException if the text could not be stored
+     */
+    void addExtractedText(String idStr, String text) throws KeywordSearchModuleException {
+        final ExtractedTextStore store = textStore;
+        if (store == null) {
+            return;
+        }
+        final int sepIndex = idStr.indexOf(ID_CHUNK_SEP);
+        final long start = SolrRequestStats.start();
+        try {
+            if (sepIndex == -1) {
+                store.put(Long.parseLong(idStr), 0, text);
+            } else {
+                store.put(Long.parseLong(idStr.substring(0, sepIndex)), Integer.parseInt(idStr.substring(sepIndex + 1)), text);
+            }
+            requestStats.done(RequestType.TEXT_STORE_PUT, start, text.length());
+        } catch (IOException ex) {
+            requestStats.failed(RequestType.TEXT_STORE_PUT, start, ex);
+            throw new KeywordSearchModuleException("Could not store extracted text of document: " + idStr, ex);
+        }
+    }
+
+    /**
+     * Get the extracted text of a document from the text store
+     *
+     * @param idStr id of the document, file id or chunk id string
+     * @return the text, or null if not in the store, e.g. a chunk indexed as
+     * a reference to another chunk, or a document of an index from before the
+     * text store, with the text stored in Solr
+     */
+    String getExtractedText(String idStr) {
+        final ExtractedTextStore store = textStore;
+        if (store == null) {
+            return null;
+        }
+        final int sepIndex = idStr.indexOf(ID_CHUNK_SEP);
+        final long start = SolrRequestStats.start();
+        final String text;
+        if (sepIndex == -1) {
+            text = store.get(Long.parseLong(idStr), 0);
+        } else {
+            text = store.get(Long.parseLong(idStr.substring(0, sepIndex)), Integer.parseInt(idStr.substring(sepIndex + 1)));
+        }
+        requestStats.done(RequestType.TEXT_STORE_GET, start, text != null ? text.length() : 0);
+        return text;
     }
 
     /**
@@ -502,6 +757,19 @@ public class Server {
         return this.openCore(DEFAULT_CORE_NAME, new File(dataDir));
     }
 
+    /**
+     * Open the extracted text store for the given case
+     */
+    private ExtractedTextStore openTextStore(Case c) throws KeywordSearchModuleException {
+        String sep = File.separator;
+        String textDir = c.getCaseDirectory() + sep + "keywordsearch" + sep + "text";
+        try {
+            return ExtractedTextStore.open(new File(textDir));
+        } catch (IOException ex) {
+            throw new KeywordSearchModuleException("Could not open extracted text store", ex);
+        }
+    }
+
     /**
      * commit current core if it exists
      *
@@ -512,13 +780,140 @@ public class Server {
             throw new NoOpenCoreException();
         }
         currentCore.commit();
+        commitShards(false);
+        ++indexGeneration;
+    }
+
+    /**
+     * Soft commit current core if it exists, making the documents added since
+     * the last commit searchable without flushing the index to disk. Unlike
+     * commit(), does not wait for a hard commit in progress.
+     *
+     * @throws SolrServerException, NoOpenCoreException
+     */
+    void softCommit() throws SolrServerException, NoOpenCoreException {
+        final Core core = currentCore;
+        if (core == null) {
+            throw new NoOpenCoreException();
+        }
+        core.softCommit();
+        commitShards(true);
+        ++indexGeneration;
+    }
+
+    /**
+     * Commit all shards of the current case at the same time, each shard
+     * flushes and merges its own index
+     *
+     * @param soft true to soft commit
+     */
+    private void commitShards(final boolean soft) throws SolrServerException {
+        final List<Future<Void>> commits = new ArrayList<Future<Void>>();
+        for (final Core shard : shardCores.values()) {
+            commits.add(shardExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws SolrServerException {
+                    if (soft) {
+                        shard.softCommit();
+                    } else {
+                        shard.commit();
+                    }
+                    return null;
+                }
+            }));
+        }
+        SolrServerException error = null;
+        for (Future<Void> commit : commits) {
+            try {
+                commit.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SolrServerException("Interrupted while committing index shards", ex);
+            } catch (ExecutionException ex) {
+                //wait for the other shards before reporting the error
+                if (error == null) {
+                    error = new SolrServerException("Could not commit index shard", ex.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Get the generation of the index of the current core, that changes every
+     * time new documents become searchable or the core changes. Can be used to
+     * tell if data cached from earlier queries is still current.
+     *
+     * @return current index generation
+     */
+    long getIndexGeneration() {
+        return indexGeneration;
+    }
+
+    /**
+     * Get the time the index was last searched, read or added to
+     *
+     * @return time in ms
+     */
+    long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    /**
+     * Get the number of index segments of the current core, or of its most
+     * fragmented shard if the case index is sharded
+     *
+     * @return number of segments, or -1 if not reported by Solr
+     * @throws SolrServerException, NoOpenCoreException
+     */
+    int getSegmentCount() throws SolrServerException, NoOpenCoreException {
+        final Core core = currentCore;
+        if (core == null) {
+            throw new NoOpenCoreException();
+        }
+        int segments = core.getSegmentCount();
+        for (Core shard : shardCores.values()) {
+            segments = Math.max(segments, shard.getSegmentCount());
+        }
+        return segments;
+    }
+
+    /**
+     * Merge the index segments of the current core and its shards, if any,
+     * down to at most maxSegments each. Searches are served while the
+     * segments are merged, from the index before the merge. Merging does not
+     * change the search results, so the index generation stays the same and
+     * the data cached for it is kept.
+     *
+     * @param maxSegments max number of segments to leave
+     * @throws SolrServerException, NoOpenCoreException
+     */
+    void optimize(int maxSegments) throws SolrServerException, NoOpenCoreException {
+        final Core core = currentCore;
+        if (core == null) {
+            throw new NoOpenCoreException();
+        }
+        core.optimize(maxSegments);
+        for (Core shard : shardCores.values()) {
+            shard.optimize(maxSegments);
+        }
     }
 
     NamedList<Object> request(SolrRequest request) throws SolrServerException, NoOpenCoreException {
         if (currentCore == null) {
             throw new NoOpenCoreException();
         }
-        return currentCore.request(request);
+        lastActivityTime = System.currentTimeMillis();
+        //update requests with content of an image go to the shard of the image
+        final SolrParams params = request.getParams();
+        final String imageId = params == null ? null : params.get("literal." + Schema.IMAGE_ID.toString());
+        try {
+            return getIndexingCore(imageId).request(request);
+        } catch (KeywordSearchModuleException ex) {
+            throw new SolrServerException("Could not open index shard", ex);
+        }
     }
 
     /**
@@ -633,6 +1028,7 @@ public class Server {
             throw new NoOpenCoreException();
         }
         try {
+            lastActivityTime = System.currentTimeMillis();
             return currentCore.query(sq);
         } catch (SolrServerException ex) {
             throw new KeywordSearchModuleException("Error running query: " + sq.getQuery(), ex);
@@ -653,6 +1049,7 @@ public class Server {
             throw new NoOpenCoreException();
         }
         try {
+            lastActivityTime = System.currentTimeMillis();
             return currentCore.query(sq, method);
         } catch (SolrServerException ex) {
             throw new KeywordSearchModuleException("Error running query: " + sq.getQuery(), ex);
@@ -672,6 +1069,7 @@ public class Server {
             throw new NoOpenCoreException();
         }
         try {
+            lastActivityTime = System.currentTimeMillis();
             return currentCore.queryTerms(sq);
         } catch (SolrServerException ex) {
             throw new KeywordSearchModuleException("Error running terms query: " + sq.getQuery(), ex);
@@ -679,7 +1077,8 @@ public class Server {
     }
 
     /**
-     * Execute Solr query to get content text
+     * Get the content text, from the extracted text store, or from Solr for
+     * an index with the text stored in Solr
      *
      * @param content to get the text for
      * @return content text string or null on error
@@ -689,11 +1088,17 @@ public class Server {
         if (currentCore == null) {
             throw new NoOpenCoreException();
         }
+        final String text = getExtractedText(Long.toString(content.getId()));
+        if (text != null) {
+            return text;
+        }
+        lastActivityTime = System.currentTimeMillis();
         return currentCore.getSolrContent(content.getId(), 0);
     }
 
     /**
-     * Execute Solr query to get content text from content chunk
+     * Get the content text of a content chunk, from the extracted text store,
+     * or from Solr for an index with the text stored in Solr
      *
      * @param content to get the text for
      * @param chunkID chunk number to query (starting at 1), or 0 if there is no
@@ -705,6 +1110,12 @@ public class Server {
         if (currentCore == null) {
             throw new NoOpenCoreException();
         }
+        final String idStr = chunkID == 0 ? Long.toString(content.getId()) : getChunkIdString(content.getId(), chunkID);
+        final String text = getExtractedText(idStr);
+        if (text != null) {
+            return text;
+        }
+        lastActivityTime = System.currentTimeMillis();
         return currentCore.getSolrContent(content.getId(), chunkID);
     }
 
@@ -773,6 +1184,9 @@ public class Server {
         // the server to access a core needs to be built from a URL with the
         // core in it, and is only good for core-specific operations
         private HttpSolrServer solrCore;
+        // shards the queries of the core are distributed to, or null if the
+        // core is searched alone
+        private volatile String shards = null;
 
         private Core(String name) {
             this.name = name;
@@ -795,62 +1209,218 @@ public class Server {
         }
 
         private QueryResponse query(SolrQuery sq) throws SolrServerException {
-            return solrCore.query(sq);
+            return query(sq, SolrRequest.METHOD.GET);
+        }
+
+        /**
+         * Set the query to run on all shards of the core, if any, and merge
+         * the results of the shards
+         */
+        private SolrQuery distribute(SolrQuery sq) {
+            final String shardList = shards;
+            if (shardList != null) {
+                sq.set(ShardParams.SHARDS, shardList);
+                final String handler = sq.getRequestHandler();
+                if (handler != null) {
+                    sq.set(ShardParams.SHARDS_QT, handler);
+                    //handlers such as terms are not distributed by default
+                    sq.set("distrib", true);
+                }
+            }
+            return sq;
         }
 
         private NamedList<Object> request(SolrRequest request) throws SolrServerException {
+            final RequestType type = request instanceof ContentStreamUpdateRequest ? RequestType.EXTRACT : RequestType.QUERY;
+            final long start = SolrRequestStats.start();
             try {
-                return solrCore.request(request);
+                final NamedList<Object> response = solrCore.request(request);
+                requestStats.done(type, start, getPayloadSize(request));
+                return response;
             } catch (IOException e) {
+                requestStats.failed(type, start, e);
                 logger.log(Level.WARNING, "Could not issue Solr request. ", e);
                 throw new SolrServerException("Could not issue Solr request", e);
+            } catch (SolrServerException e) {
+                requestStats.failed(type, start, e);
+                throw e;
+            } catch (RuntimeException e) {
+                requestStats.failed(type, start, e);
+                throw e;
             }
+        }
 
+        /**
+         * @return size of the content sent with the request, if known
+         */
+        private long getPayloadSize(SolrRequest request) {
+            long size = 0;
+            try {
+                final Collection<ContentStream> streams = request.getContentStreams();
+                if (streams != null) {
+                    for (ContentStream stream : streams) {
+                        if (stream.getSize() != null) {
+                            size += stream.getSize();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                //size unknown
+            }
+            return size;
         }
 
         private QueryResponse query(SolrQuery sq, SolrRequest.METHOD method) throws SolrServerException {
-            return solrCore.query(sq, method);
+            final long start = SolrRequestStats.start();
+            try {
+                final QueryResponse response = solrCore.query(distribute(sq), method);
+                requestStats.done(RequestType.QUERY, start, 0);
+                return response;
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.QUERY, start, e);
+                throw e;
+            } catch (RuntimeException e) {
+                requestStats.failed(RequestType.QUERY, start, e);
+                throw e;
+            }
         }
 
         private TermsResponse queryTerms(SolrQuery sq) throws SolrServerException {
-            QueryResponse qres = solrCore.query(sq);
-            return qres.getTermsResponse();
+            final long start = SolrRequestStats.start();
+            try {
+                QueryResponse qres = solrCore.query(distribute(sq));
+                final TermsResponse terms = qres.getTermsResponse();
+                requestStats.done(RequestType.TERMS, start, 0);
+                return terms;
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.TERMS, start, e);
+                throw e;
+            } catch (RuntimeException e) {
+                requestStats.failed(RequestType.TERMS, start, e);
+                throw e;
+            }
         }
 
         private void commit() throws SolrServerException {
+            final long start = SolrRequestStats.start();
             try {
                 //commit and block
                 solrCore.commit(true, true);
+                requestStats.done(RequestType.COMMIT, start, 0);
             } catch (IOException e) {
+                requestStats.failed(RequestType.COMMIT, start, e);
                 logger.log(Level.WARNING, "Could not commit index. ", e);
                 throw new SolrServerException("Could not commit index", e);
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.COMMIT, start, e);
+                throw e;
+            }
+        }
+
+        private void softCommit() throws SolrServerException {
+            final long start = SolrRequestStats.start();
+            try {
+                //block until the new documents are visible to searches
+                solrCore.commit(false, true, true);
+                requestStats.done(RequestType.SOFT_COMMIT, start, 0);
+            } catch (IOException e) {
+                requestStats.failed(RequestType.SOFT_COMMIT, start, e);
+                logger.log(Level.WARNING, "Could not soft commit index. ", e);
+                throw new SolrServerException("Could not soft commit index", e);
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.SOFT_COMMIT, start, e);
+                throw e;
             }
         }
 
+        private void optimize(int maxSegments) throws SolrServerException {
+            final long start = SolrRequestStats.start();
+            try {
+                //block until merged and the new searcher is open
+                solrCore.optimize(true, true, maxSegments);
+                requestStats.done(RequestType.OPTIMIZE, start, 0);
+            } catch (IOException e) {
+                requestStats.failed(RequestType.OPTIMIZE, start, e);
+                logger.log(Level.WARNING, "Could not optimize index. ", e);
+                throw new SolrServerException("Could not optimize index", e);
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.OPTIMIZE, start, e);
+                throw e;
+            }
+        }
+
+        /**
+         * @return number of index segments, or -1 if not reported
+         */
+        private int getSegmentCount() throws SolrServerException {
+            final LukeRequest luke = new LukeRequest();
+            luke.setNumTerms(0);
+            final Object segments;
+            final long start = SolrRequestStats.start();
+            try {
+                segments = luke.process(solrCore).getIndexInfo().get("segmentCount");
+                requestStats.done(RequestType.INDEX_INFO, start, 0);
+            } catch (IOException e) {
+                requestStats.failed(RequestType.INDEX_INFO, start, e);
+                throw new SolrServerException("Could not get index info", e);
+            } catch (SolrServerException e) {
+                requestStats.failed(RequestType.INDEX_INFO, start, e);
+                throw e;
+            }
+            return segments instanceof Number ? ((Number) segments).intValue() : -1;
+        }
+
         void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
+            Object content = doc.getFieldValue(Schema.CONTENT_INDEXED.toString());
+            if (content == null) {
+                content = doc.getFieldValue(Schema.CONTENT.toString());
+            }
+            final long start = SolrRequestStats.start();
             try {
                 solrCore.add(doc);
+                requestStats.done(RequestType.ADD, start, content instanceof String ? ((String) content).length() : 0);
             } catch (SolrServerException ex) {
+                requestStats.failed(RequestType.ADD, start, ex);
                 logger.log(Level.SEVERE, "Could not add document to index via update handler: " + doc.getField("id"), ex);
                 throw new KeywordSearchModuleException("Could not add document to index via update handler: " + doc.getField("id"), ex);
             } catch (IOException ex) {
+                requestStats.failed(RequestType.ADD, start, ex);
                 logger.log(Level.SEVERE, "Could not add document to index via update handler: " + doc.getField("id"), ex);
                 throw new KeywordSearchModuleException("Could not add document to index via update handler: " + doc.getField("id"), ex);
             }
         }
 
         private String getSolrContent(long contentID, int chunkID) {
-            final SolrQuery q = new SolrQuery();
-            q.setQuery("*:*");
-            String filterQuery = Schema.ID.toString() + ":" + contentID;
+            String idStr = Long.toString(contentID);
             if (chunkID != 0) {
-                filterQuery = filterQuery + Server.ID_CHUNK_SEP + chunkID;
+                idStr = getChunkIdString(contentID, chunkID);
             }
-            q.addFilterQuery(filterQuery);
-            q.setFields(Schema.CONTENT.toString());
+            return getSolrContent(idStr, true);
+        }
+
+        /**
+         * @param idStr id of the document
+         * @param followRef whether to get the text of the referenced chunk, if
+         * the document is a chunk with the same text as a chunk indexed before
+         */
+        private String getSolrContent(String idStr, boolean followRef) {
+            final SolrQuery q = new SolrQuery();
+            q.setQuery("*:*");
+            q.addFilterQuery(Schema.ID.toString() + ":" + idStr);
+            q.setFields(Schema.CONTENT.toString(), Schema.CHUNK_REF.toString());
+            final long start = SolrRequestStats.start();
             try {
-                return (String) solrCore.query(q).getResults().get(0).getFieldValue(Schema.CONTENT.toString());
+                final SolrDocument doc = solrCore.query(distribute(q)).getResults().get(0);
+                final String refIdStr = (String) doc.getFieldValue(Schema.CHUNK_REF.toString());
+                final String text = (String) doc.getFieldValue(Schema.CONTENT.toString());
+                requestStats.done(RequestType.CONTENT, start, text != null ? text.length() : 0);
+                if (refIdStr != null && followRef) {
+                    final String refText = getExtractedText(refIdStr);
+                    return refText != null ? refText : getSolrContent(refIdStr, false);
+                }
+                return text;
             } catch (SolrServerException ex) {
+                requestStats.failed(RequestType.CONTENT, start, ex);
                 logger.log(Level.WARNING, "Error getting content from Solr", ex);
                 return null;
             }
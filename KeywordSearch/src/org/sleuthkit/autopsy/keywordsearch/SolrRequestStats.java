@@ -0,0 +1,319 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Timers and counters of the requests of the keyword search pipeline, by
+ * request type: number of requests, errors and timeouts, time taken and
+ * payload size. Used to tell if slow keyword ingest is caused by text
+ * extraction, indexing, commits or searches.
+ *
+ * The statistics are exposed as an MBean, and a summary is logged
+ * periodically while there are new requests.
+ */
+public class SolrRequestStats implements SolrRequestStatsMBean {
+
+    /**
+     * Types of the requests timed
+     */
+    enum RequestType {
+
+        ADD, //add document with the extracted text
+        EXTRACT, //extract and add document in Solr
+        COMMIT,
+        SOFT_COMMIT,
+        OPTIMIZE,
+        QUERY,
+        TERMS,
+        CONTENT, //get stored text of a document from Solr
+        INDEX_INFO,
+        TEXT_STORE_PUT,
+        TEXT_STORE_GET,
+        CHUNK_READ, //read a chunk of extracted text to index
+    };
+    private static final Logger logger = Logger.getLogger(SolrRequestStats.class.getName());
+    private static final String MBEAN_NAME = "org.sleuthkit.autopsy.keywordsearch:type=SolrRequestStats";
+    private static final long LOG_INTERVAL = 5; //in min
+    private static SolrRequestStats instance;
+    private final TypeStats[] stats = new TypeStats[RequestType.values().length];
+    private final AtomicLong restarts = new AtomicLong();
+    //requests when the summary was logged last
+    private long loggedRequests = 0;
+
+    private SolrRequestStats() {
+        for (int i = 0; i < stats.length; ++i) {
+            stats[i] = new TypeStats();
+        }
+    }
+
+    static synchronized SolrRequestStats getDefault() {
+        if (instance == null) {
+            instance = new SolrRequestStats();
+            instance.register();
+        }
+        return instance;
+    }
+
+    /**
+     * @return start time of a request, to pass to done() or failed()
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a request that completed
+     *
+     * @param type request type
+     * @param startTime request start, from start()
+     * @param payloadSize size of the payload sent or received
+     */
+    void done(RequestType type, long startTime, long payloadSize) {
+        final TypeStats typeStats = stats[type.ordinal()];
+        typeStats.record(System.nanoTime() - startTime);
+        typeStats.payload.addAndGet(payloadSize);
+    }
+
+    /**
+     * Record a request that failed, as a timeout if the error was caused by
+     * a socket timeout
+     *
+     * @param type request type
+     * @param startTime request start, from start()
+     * @param error the error of the request
+     */
+    void failed(RequestType type, long startTime, Throwable error) {
+        final TypeStats typeStats = stats[type.ordinal()];
+        typeStats.record(System.nanoTime() - startTime);
+        if (isTimeout(error)) {
+            typeStats.timeouts.incrementAndGet();
+        } else {
+            typeStats.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record a request that was given up on after a timeout, still running
+     * or abandoned
+     *
+     * @param type request type
+     */
+    void timedOut(RequestType type) {
+        stats[type.ordinal()].timeouts.incrementAndGet();
+    }
+
+    /**
+     * Record a restart of Solr
+     */
+    void restarted() {
+        restarts.incrementAndGet();
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String[] getRequestTypes() {
+        final RequestType[] types = RequestType.values();
+        final String[] names = new String[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            names[i] = types[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public String getSummary() {
+        final StringBuilder sb = new StringBuilder();
+        for (RequestType type : RequestType.values()) {
+            final TypeStats typeStats = stats[type.ordinal()];
+            final long count = typeStats.count.get();
+            if (count == 0) {
+                continue;
+            }
+            sb.append(type.name()).append(": count=").append(count);
+            sb.append(", errors=").append(typeStats.errors.get());
+            sb.append(", timeouts=").append(typeStats.timeouts.get());
+            sb.append(", total ms=").append(TimeUnit.NANOSECONDS.toMillis(typeStats.time.get()));
+            sb.append(String.format(", mean ms=%.2f, max ms=%.2f", typeStats.getMeanTimeMs(), typeStats.getMaxTimeMs()));
+            sb.append(", payload=").append(typeStats.payload.get()).append("\n");
+        }
+        sb.append("restarts: ").append(restarts.get());
+        return sb.toString();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (TypeStats typeStats : stats) {
+            count += typeStats.count.get();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (TypeStats typeStats : stats) {
+            count += typeStats.errors.get();
+        }
+        return count;
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        long count = 0;
+        for (TypeStats typeStats : stats) {
+            count += typeStats.timeouts.get();
+        }
+        return count;
+    }
+
+    @Override
+    public long getRestartCount() {
+        return restarts.get();
+    }
+
+    @Override
+    public long getRequestCount(String type) {
+        return getStats(type).count.get();
+    }
+
+    @Override
+    public long getErrorCount(String type) {
+        return getStats(type).errors.get();
+    }
+
+    @Override
+    public long getTimeoutCount(String type) {
+        return getStats(type).timeouts.get();
+    }
+
+    @Override
+    public double getMeanTimeMs(String type) {
+        return getStats(type).getMeanTimeMs();
+    }
+
+    @Override
+    public double getMaxTimeMs(String type) {
+        return getStats(type).getMaxTimeMs();
+    }
+
+    @Override
+    public long getPayloadSize(String type) {
+        return getStats(type).payload.get();
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < stats.length; ++i) {
+            stats[i] = new TypeStats();
+        }
+        restarts.set(0);
+        loggedRequests = 0;
+    }
+
+    private TypeStats getStats(String type) {
+        return stats[RequestType.valueOf(type).ordinal()];
+    }
+
+    /**
+     * Register the MBean and start logging the summary
+     */
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Could not register keyword search request statistics MBean", ex);
+        }
+
+        final ScheduledExecutorService logExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Keyword search request statistics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        logExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                logSummary();
+            }
+        }, LOG_INTERVAL, LOG_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    private synchronized void logSummary() {
+        final long requests = getRequestCount();
+        if (requests == loggedRequests) {
+            return;
+        }
+        loggedRequests = requests;
+        logger.log(Level.INFO, "Keyword search request statistics:\n" + getSummary());
+    }
+
+    /**
+     * Counters of the requests of a type
+     */
+    private static class TypeStats {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong time = new AtomicLong(); //in ns
+        private final AtomicLong maxTime = new AtomicLong(); //in ns
+        private final AtomicLong payload = new AtomicLong();
+
+        void record(long requestTime) {
+            count.incrementAndGet();
+            time.addAndGet(requestTime);
+            long max = maxTime.get();
+            while (requestTime > max && !maxTime.compareAndSet(max, requestTime)) {
+                max = maxTime.get();
+            }
+        }
+
+        double getMeanTimeMs() {
+            final long n = count.get();
+            return n == 0 ? 0 : time.get() / 1000000.0 / n;
+        }
+
+        double getMaxTimeMs() {
+            return maxTime.get() / 1000000.0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+/**
+ * Management interface of the keyword search request statistics, see
+ * SolrRequestStats for the request types
+ */
+public interface SolrRequestStatsMBean {
+
+    /**
+     * @return names of the request types
+     */
+    String[] getRequestTypes();
+
+    /**
+     * @return summary of the requests of all types, one line per type
+     */
+    String getSummary();
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getTimeoutCount();
+
+    /**
+     * @return number of Solr restarts to recover from a timeout or error
+     */
+    long getRestartCount();
+
+    long getRequestCount(String type);
+
+    long getErrorCount(String type);
+
+    long getTimeoutCount(String type);
+
+    double getMeanTimeMs(String type);
+
+    double getMaxTimeMs(String type);
+
+    /**
+     * @return total payload of the requests of the type, in bytes or chars
+     * of text
+     */
+    long getPayloadSize(String type);
+
+    /**
+     * Start counting from zero
+     */
+    void reset();
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,15 +31,24 @@ import org.sleuthkit.autopsy.coreutils.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.GroupParams;
+import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Version;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
+import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskException;
 
 public class TermComponentQuery implements KeywordSearchQuery {
@@ -57,6 +67,12 @@ public class TermComponentQuery implements KeywordSearchQuery {
     private final List<KeywordQueryFilter> filters = new ArrayList<KeywordQueryFilter>();
     private String field = null;
     private static int MAX_TERMS_RESULTS = 20000;
+    //number of matching terms fetched per terms request
+    private static final int TERMS_PAGE_SIZE = 1000;
+    //number of terms resolved to documents in a single grouped query
+    private static final int TERMS_RESOLVE_BATCH_SIZE = 100;
+    //documents returned per term in the grouped query, terms with more are resolved one by one
+    private static final int TERMS_RESOLVE_DOCS_LIMIT = 500;
     
     private static final boolean DEBUG = (Version.getBuildType() == Version.Type.DEVELOPMENT);
 
@@ -140,6 +156,9 @@ public class TermComponentQuery implements KeywordSearchQuery {
             Server solrServer = KeywordSearch.getServer();
             TermsResponse tr = solrServer.queryTerms(q);
             termsCol = tr.getTerms(TERMS_SEARCH_FIELD);
+            if (termsCol == null) {
+                termsCol = new ArrayList<Term>();
+            }
             return termsCol;
         } catch (KeywordSearchModuleException ex) {
             logger.log(Level.WARNING, "Error executing the regex terms query: " + termsQuery, ex);
@@ -220,46 +239,355 @@ public class TermComponentQuery implements KeywordSearchQuery {
     public Map<String, List<ContentHit>> performQuery() throws NoOpenCoreException {
         Map<String, List<ContentHit>> results = new HashMap<String, List<ContentHit>>();
 
+        //terms do not repeat across pages
+        final KeywordQueryCursor cursor = performQueryPaged();
+        while (cursor.hasNextPage()) {
+            results.putAll(cursor.nextPage());
+        }
+
+        int resultSize = 0;
+        for (List<ContentHit> termHits : results.values()) {
+            resultSize += termHits.size();
+        }
+        logger.log(Level.INFO, "Regex # results: " + resultSize);
+
+        return results;
+    }
+
+    @Override
+    public KeywordQueryCursor performQueryPaged() {
+        terms = new ArrayList<Term>();
+        //served from the results of the same query if the index did not change since
+        final String cacheKey = QueryResultCache.getKey(TermComponentQuery.class.getSimpleName(), field, queryEscaped, filters);
+        return QueryResultCache.getDefault().getCursor(cacheKey, new TermsQueryCursor());
+    }
+
+    /**
+     * Cursor reading a page of matching terms at a time, and resolving the
+     * page terms to the documents containing them
+     */
+    private class TermsQueryCursor implements KeywordQueryCursor {
+
+        private boolean started = false;
+        private boolean allTermsFetched = false;
+        //matching terms from the cached dictionary, or null if the terms component is used
+        private List<Term> dictionaryTerms;
+        private int dictionaryOffset = 0;
+        private SolrQuery q;
+
+        @Override
+        public boolean hasNextPage() {
+            return !allTermsFetched;
+        }
+
+        @Override
+        public Map<String, List<ContentHit>> nextPage() throws NoOpenCoreException {
+            Map<String, List<ContentHit>> results = new HashMap<String, List<ContentHit>>();
+            List<Term> termsPage = nextTermsPage();
+            if (termsPage != null) {
+                resolveTermsPage(termsPage, results);
+            }
+            return results;
+        }
+
+        private List<Term> nextTermsPage() throws NoOpenCoreException {
+            if (allTermsFetched) {
+                return null;
+            }
+            if (!started) {
+                started = true;
+                //narrow down the terms using the cached dictionary first, if it can be used for the regex
+                dictionaryTerms = TermsDictionary.getDefault().findTerms(queryEscaped);
+                if (dictionaryTerms != null) {
+                    if (dictionaryTerms.size() > MAX_TERMS_RESULTS) {
+                        dictionaryTerms = dictionaryTerms.subList(0, MAX_TERMS_RESULTS);
+                        logger.log(Level.INFO, "Regex terms limit reached: " + MAX_TERMS_RESULTS + ", query: " + termsQuery);
+                    }
+                } else {
+                    q = createQuery();
+                    q.setShowDebugInfo(DEBUG);
+                    //page through the matching terms in index order, not to hold all of them at once
+                    q.setTermsLimit(TERMS_PAGE_SIZE);
+                    q.setTermsSortString("index");
+                }
+            }
+
+            List<Term> termsPage;
+            if (dictionaryTerms != null) {
+                final int end = Math.min(dictionaryTerms.size(), dictionaryOffset + TERMS_PAGE_SIZE);
+                termsPage = dictionaryTerms.subList(dictionaryOffset, end);
+                dictionaryOffset = end;
+                allTermsFetched = dictionaryOffset >= dictionaryTerms.size();
+            } else {
+                termsPage = executeQuery(q);
+                if (termsPage == null) {
+                    allTermsFetched = true;
+                    return null;
+                }
+                allTermsFetched = termsPage.size() < TERMS_PAGE_SIZE;
+                if (terms.size() + termsPage.size() >= MAX_TERMS_RESULTS) {
+                    termsPage = termsPage.subList(0, MAX_TERMS_RESULTS - terms.size());
+                    allTermsFetched = true;
+                    logger.log(Level.INFO, "Regex terms limit reached: " + MAX_TERMS_RESULTS + ", query: " + termsQuery);
+                }
+                if (!termsPage.isEmpty()) {
+                    //next page starts after the last term
+                    q.setTermsLower(termsPage.get(termsPage.size() - 1).getTerm());
+                    q.setTermsLowerInclusive(false);
+                }
+            }
+            terms.addAll(termsPage);
+            return termsPage;
+        }
+    }
+
+    @Override
+    public long queryNumHits() throws NoOpenCoreException {
+        //the term frequencies are for the whole index, count the documents the terms resolve to instead,
+        //with the query filters and with the chunks referencing them, as performQuery() returns them
+        long numHits = 0;
+        List<Term> dictionaryTerms = TermsDictionary.getDefault().findTerms(queryEscaped);
+        if (dictionaryTerms != null) {
+            if (dictionaryTerms.size() > MAX_TERMS_RESULTS) {
+                dictionaryTerms = dictionaryTerms.subList(0, MAX_TERMS_RESULTS);
+            }
+            for (int i = 0; i < dictionaryTerms.size(); i += TERMS_RESOLVE_BATCH_SIZE) {
+                numHits += countTerms(dictionaryTerms.subList(i, Math.min(dictionaryTerms.size(), i + TERMS_RESOLVE_BATCH_SIZE)));
+            }
+            return numHits;
+        }
+
         final SolrQuery q = createQuery();
-        q.setShowDebugInfo(DEBUG);
-        q.setTermsLimit(MAX_TERMS_RESULTS); 
-        terms = executeQuery(q);
+        q.setTermsLimit(TERMS_PAGE_SIZE);
+        q.setTermsSortString("index");
+        int numTerms = 0;
+        boolean allTermsFetched = false;
+        while (!allTermsFetched && numTerms < MAX_TERMS_RESULTS) {
+            List<Term> termsPage = executeQuery(q);
+            if (termsPage == null) {
+                break;
+            }
+            allTermsFetched = termsPage.size() < TERMS_PAGE_SIZE;
+            if (numTerms + termsPage.size() > MAX_TERMS_RESULTS) {
+                termsPage = termsPage.subList(0, MAX_TERMS_RESULTS - numTerms);
+            }
+            for (int i = 0; i < termsPage.size(); i += TERMS_RESOLVE_BATCH_SIZE) {
+                numHits += countTerms(termsPage.subList(i, Math.min(termsPage.size(), i + TERMS_RESOLVE_BATCH_SIZE)));
+            }
+            numTerms += termsPage.size();
+            if (!termsPage.isEmpty()) {
+                q.setTermsLower(termsPage.get(termsPage.size() - 1).getTerm());
+                q.setTermsLowerInclusive(false);
+            }
+        }
+        return numHits;
+    }
+
+    /**
+     * Count the documents a batch of matching terms resolve to, with a single
+     * query with a facet query per term and per term references
+     *
+     * @param batch the terms to count
+     * @return number of hits of the terms
+     * @throws NoOpenCoreException
+     */
+    private long countTerms(List<Term> batch) throws NoOpenCoreException {
+        //the chunk references do not match the terms, so count over all the filtered documents
+        final SolrQuery q = new SolrQuery("*:*");
+        q.setRows(0);
+        for (Term term : batch) {
+            //the same query LuceneQuery would run for the term
+            final String termQuery = KeywordSearchUtil.quoteQuery(KeywordSearchUtil.escapeLuceneQuery(term.getTerm()));
+            q.addFacetQuery(termQuery);
+            q.addFacetQuery(LuceneQuery.createReferencingChunksQuery(termQuery));
+        }
+        for (KeywordQueryFilter filter : filters) {
+            q.addFilterQuery(filter.toString());
+        }
+
+        long numHits = 0;
+        try {
+            final Map<String, Integer> counts = KeywordSearch.getServer().query(q, METHOD.POST).getFacetQuery();
+            if (counts != null) {
+                for (Integer count : counts.values()) {
+                    numHits += count;
+                }
+            }
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Error executing Solr query to count regex term hits, query: " + termsQuery, ex);
+        }
+        return numHits;
+    }
+
+    /**
+     * Resolve the matching terms to documents, in batches
+     *
+     * @param termsPage the terms to resolve
+     * @param results map to add the term results to
+     * @return number of hits added
+     * @throws NoOpenCoreException
+     */
+    private int resolveTermsPage(List<Term> termsPage, Map<String, List<ContentHit>> results) throws NoOpenCoreException {
+        int resultSize = 0;
+        for (int i = 0; i < termsPage.size(); i += TERMS_RESOLVE_BATCH_SIZE) {
+            final List<Term> batch = termsPage.subList(i, Math.min(termsPage.size(), i + TERMS_RESOLVE_BATCH_SIZE));
+            resultSize += resolveTerms(batch, results);
+        }
+        return resultSize;
+    }
 
+    /**
+     * Resolve a batch of matching terms to the documents containing them,
+     * with a single grouped query with a group per term
+     *
+     * @param batch the terms to resolve
+     * @param results map to add the term results to
+     * @return number of hits added
+     * @throws NoOpenCoreException
+     */
+    private int resolveTerms(List<Term> batch, Map<String, List<ContentHit>> results) throws NoOpenCoreException {
         int resultSize = 0;
-        
-        for (Term term : terms) {
-            final String termStr = KeywordSearchUtil.escapeLuceneQuery(term.getTerm());
-
-            LuceneQuery filesQuery = new LuceneQuery(termStr);
-            //filesQuery.setField(TERMS_SEARCH_FIELD);
-            for (KeywordQueryFilter filter : filters) {
-                //set filter
-                //note: we can't set filter query on terms query
-                //but setting filter query on terms results query will yield the same result
-                filesQuery.addFilter(filter);
+
+        final SolrQuery q = new SolrQuery();
+        q.setShowDebugInfo(DEBUG);
+        //the same query LuceneQuery would run for the term, one group per term
+        Map<String, String> groupQueryToTerm = new HashMap<String, String>();
+        StringBuilder sb = new StringBuilder();
+        for (Term term : batch) {
+            final String termQuery = KeywordSearchUtil.quoteQuery(KeywordSearchUtil.escapeLuceneQuery(term.getTerm()));
+            groupQueryToTerm.put(termQuery, term.getTerm());
+            if (sb.length() > 0) {
+                sb.append(" OR ");
+            }
+            sb.append(termQuery);
+            q.add(GroupParams.GROUP_QUERY, termQuery);
+        }
+        q.setQuery(sb.toString());
+        q.set(GroupParams.GROUP, true);
+        q.set(GroupParams.GROUP_LIMIT, TERMS_RESOLVE_DOCS_LIMIT);
+        q.setFields(Server.Schema.ID.toString());
+        for (KeywordQueryFilter filter : filters) {
+            //note: we can't set filter query on terms query
+            //but setting filter query on terms results query will yield the same result
+            q.addFilterQuery(filter.toString());
+        }
+
+        GroupResponse groupResponse = null;
+        try {
+            groupResponse = KeywordSearch.getServer().query(q, METHOD.POST).getGroupResponse();
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Error executing Solr query to resolve regex terms, query: " + termsQuery, ex);
+            return resultSize;
+        }
+        if (groupResponse == null) {
+            return resultSize;
+        }
+
+        SleuthkitCase sc = null;
+        try {
+            sc = Case.getCurrentCase().getSleuthkitCase();
+        } catch (IllegalStateException ex) {
+            //no case open, must be just closed
+            return resultSize;
+        }
+
+        Map<String, List<String>> termResultIDs = new LinkedHashMap<String, List<String>>();
+        Map<String, Collection<ContentHit>> termLargeResults = new HashMap<String, Collection<ContentHit>>();
+        List<String> allResultIDs = new ArrayList<String>();
+        for (GroupCommand command : groupResponse.getValues()) {
+            final String term = groupQueryToTerm.get(command.getName());
+            if (term == null) {
+                continue;
             }
-            try {
-                Map<String, List<ContentHit>> subResults = filesQuery.performQuery();
-                Set<ContentHit> filesResults = new HashSet<ContentHit>();
-                for (String key : subResults.keySet()) {
-                    List<ContentHit> keyRes = subResults.get(key);
-                    resultSize += keyRes.size();
-                    filesResults.addAll(keyRes);
+            List<String> groupResultIDs = new ArrayList<String>();
+            termResultIDs.put(term, groupResultIDs);
+            for (Group group : command.getValues()) {
+                final SolrDocumentList docs = group.getResult();
+                if (docs.getNumFound() > docs.size()) {
+                    //too many documents for the group, page through them with a separate query
+                    termLargeResults.put(term, resolveTerm(term));
+                    groupResultIDs.clear();
+                    break;
+                }
+                for (SolrDocument doc : docs) {
+                    groupResultIDs.add((String) doc.getFieldValue(Server.Schema.ID.toString()));
                 }
-                results.put(term.getTerm(), new ArrayList<ContentHit>(filesResults));
-            } catch (NoOpenCoreException e) {
-                logger.log(Level.WARNING, "Error executing Solr query,", e);
-                throw e;
-            } catch (RuntimeException e) {
-                logger.log(Level.WARNING, "Error executing Solr query,", e);
             }
+            allResultIDs.addAll(groupResultIDs);
+        }
 
+        //identical chunks are indexed once, add the chunks referencing the matching ones
+        final Map<String, List<String>> chunkRefs = LuceneQuery.queryReferencingChunks(allResultIDs, filters);
+        if (!chunkRefs.isEmpty()) {
+            for (List<String> groupResultIDs : termResultIDs.values()) {
+                List<String> groupRefIDs = new ArrayList<String>();
+                for (String resultID : groupResultIDs) {
+                    final List<String> refIDs = chunkRefs.get(resultID);
+                    if (refIDs != null) {
+                        groupRefIDs.addAll(refIDs);
+                    }
+                }
+                groupResultIDs.addAll(groupRefIDs);
+            }
+            for (List<String> refIDs : chunkRefs.values()) {
+                allResultIDs.addAll(refIDs);
+            }
         }
-        
-        //TODO limit how many results we store, not to hit memory limits
-        logger.log(Level.INFO, "Regex # results: " + resultSize);
 
+        //look up the files of all terms in the batch at once
+        Map<String, ContentHit> allHits;
+        try {
+            allHits = LuceneQuery.createContentHits(sc, allResultIDs);
+        } catch (TskException ex) {
+            logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
+            //something wrong with case/db
+            return resultSize;
+        }
 
-        return results;
+        for (String term : termResultIDs.keySet()) {
+            Set<ContentHit> termHits = new HashSet<ContentHit>();
+            if (termLargeResults.containsKey(term)) {
+                termHits.addAll(termLargeResults.get(term));
+            }
+            for (String resultID : termResultIDs.get(term)) {
+                final ContentHit hit = allHits.get(resultID);
+                if (hit != null) {
+                    termHits.add(hit);
+                }
+            }
+            resultSize += termHits.size();
+            results.put(term, new ArrayList<ContentHit>(termHits));
+        }
+
+        return resultSize;
+    }
+
+    /**
+     * Resolve a single term to all the documents containing it
+     *
+     * @param term the term to resolve
+     * @return the term hits
+     * @throws NoOpenCoreException
+     */
+    private Collection<ContentHit> resolveTerm(String term) throws NoOpenCoreException {
+        final String termStr = KeywordSearchUtil.escapeLuceneQuery(term);
+
+        LuceneQuery filesQuery = new LuceneQuery(termStr);
+        for (KeywordQueryFilter filter : filters) {
+            filesQuery.addFilter(filter);
+        }
+        Set<ContentHit> filesResults = new HashSet<ContentHit>();
+        try {
+            Map<String, List<ContentHit>> subResults = filesQuery.performQuery();
+            for (String key : subResults.keySet()) {
+                filesResults.addAll(subResults.get(key));
+            }
+        } catch (NoOpenCoreException e) {
+            logger.log(Level.WARNING, "Error executing Solr query,", e);
+            throw e;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error executing Solr query,", e);
+        }
+        return filesResults;
     }
 }
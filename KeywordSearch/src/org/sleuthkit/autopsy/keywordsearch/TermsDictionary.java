@@ -0,0 +1,478 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.IngestManager;
+
+/**
+ * Local snapshot of the terms of the whitespace tokenized content field, with a
+ * trigram to term index, used to speed up regular expression term searches.
+ *
+ * Instead of a terms component regex scan of the whole term dictionary for
+ * every regular expression, the literal fragments every matching term must
+ * contain are taken from the expression, candidate terms containing all their
+ * trigrams are looked up in the index, and only the candidates are matched
+ * against the expression.
+ *
+ * The snapshot is built once per index generation and shared by all regex
+ * queries run until the index changes again. As the index changes with every
+ * soft commit during ingest, the snapshot is then reloaded at most every few
+ * minutes, with the terms component used in between. Expressions without usable
+ * literal fragments, and indexes with too many terms to keep in memory, are
+ * left to the terms component.
+ */
+class TermsDictionary {
+
+    private static final Logger logger = Logger.getLogger(TermsDictionary.class.getName());
+    private static final String TERMS_SEARCH_FIELD = Server.Schema.CONTENT_WS.toString();
+    private static final String TERMS_HANDLER = "/terms";
+    private static final int TERMS_PAGE_SIZE = 10000;
+    private static final int TERMS_TIMEOUT = 90 * 1000; //in ms
+    //max terms to keep in the snapshot, larger dictionaries are not cached
+    private static final int MAX_SNAPSHOT_TERMS = 1000000;
+    private static final int GRAM_SIZE = 3;
+    private static final long NO_GENERATION = -1;
+    //min time between reloads of the snapshot while ingest is running
+    private static final long MIN_INGEST_RELOAD_INTERVAL = 5 * 60 * 1000; //in ms
+    private static TermsDictionary instance;
+    private Snapshot snapshot;
+    //generation for which the dictionary could not be loaded
+    private long skippedGeneration = NO_GENERATION;
+    //the dictionary only grows while the case is open, once too large it is not loaded again
+    private boolean tooLarge = false;
+    //time the snapshot was last loaded
+    private long loadTime = 0;
+
+    private TermsDictionary() {
+    }
+
+    static synchronized TermsDictionary getDefault() {
+        if (instance == null) {
+            instance = new TermsDictionary();
+        }
+        return instance;
+    }
+
+    /**
+     * Drop the snapshot, e.g. when the case is closed
+     */
+    synchronized void clear() {
+        snapshot = null;
+        skippedGeneration = NO_GENERATION;
+        tooLarge = false;
+        loadTime = 0;
+    }
+
+    /**
+     * Find the terms fully matching the regular expression, case
+     * insensitively, the same way the terms component regex query does.
+     *
+     * @param regex regular expression to match terms against
+     * @return matching terms in index order, or null if the dictionary can't
+     * be used for the expression and the terms component should be queried
+     * @throws NoOpenCoreException
+     */
+    List<Term> findTerms(String regex) throws NoOpenCoreException {
+        final List<String> fragments = getLiteralFragments(regex);
+        if (fragments == null || fragments.isEmpty()) {
+            return null;
+        }
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException ex) {
+            return null;
+        }
+
+        final Snapshot current = getSnapshot();
+        if (current == null) {
+            return null;
+        }
+
+        final int[] candidates = current.getCandidates(fragments);
+        List<Term> matching = new ArrayList<Term>();
+        final Matcher matcher = pattern.matcher("");
+        for (int termIndex : candidates) {
+            final String term = current.terms[termIndex];
+            if (matcher.reset(term).matches()) {
+                matching.add(new Term(term, current.frequencies[termIndex]));
+            }
+        }
+        logger.log(Level.INFO, "Regex dictionary lookup, candidates: " + candidates.length
+                + ", matching terms: " + matching.size() + ", query: " + regex);
+        return matching;
+    }
+
+    /**
+     * Get the snapshot for the current index generation, loading it if needed
+     *
+     * @return the snapshot, or null if the dictionary is too large to cache or
+     * could not be loaded
+     */
+    private synchronized Snapshot getSnapshot() throws NoOpenCoreException {
+        final Server server = KeywordSearch.getServer();
+        final long generation = server.getIndexGeneration();
+        if (snapshot != null && snapshot.generation == generation) {
+            return snapshot;
+        }
+        if (tooLarge || skippedGeneration == generation) {
+            return null;
+        }
+        if (System.currentTimeMillis() - loadTime < MIN_INGEST_RELOAD_INTERVAL
+                && IngestManager.getDefault().isIngestRunning()) {
+            //the index changes with every soft commit during ingest, leave
+            //the searches to the terms component until the next reload
+            return null;
+        }
+        //release the old snapshot before loading the new one
+        snapshot = null;
+        loadTime = System.currentTimeMillis();
+        try {
+            snapshot = loadSnapshot(server, generation);
+            tooLarge = snapshot == null;
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Could not load the terms dictionary", ex);
+            skippedGeneration = generation;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Load all terms of the field, in index order
+     *
+     * @return the snapshot, or null if there are too many terms to cache
+     */
+    private static Snapshot loadSnapshot(Server server, long generation) throws KeywordSearchModuleException, NoOpenCoreException {
+        final long start = System.currentTimeMillis();
+        List<String> terms = new ArrayList<String>();
+        List<Long> frequencies = new ArrayList<Long>();
+
+        final SolrQuery q = new SolrQuery();
+        q.setRequestHandler(TERMS_HANDLER);
+        q.setTerms(true);
+        q.setTermsLimit(TERMS_PAGE_SIZE);
+        q.setTermsSortString("index");
+        q.addTermsField(TERMS_SEARCH_FIELD);
+        q.setTimeAllowed(TERMS_TIMEOUT);
+
+        boolean allTermsFetched = false;
+        while (!allTermsFetched) {
+            final TermsResponse tr = server.queryTerms(q);
+            final List<Term> page = tr.getTerms(TERMS_SEARCH_FIELD);
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            for (Term term : page) {
+                terms.add(term.getTerm());
+                frequencies.add(term.getFrequency());
+            }
+            if (terms.size() > MAX_SNAPSHOT_TERMS) {
+                logger.log(Level.INFO, "Terms dictionary too large to cache, over " + MAX_SNAPSHOT_TERMS + " terms");
+                return null;
+            }
+            allTermsFetched = page.size() < TERMS_PAGE_SIZE;
+            q.setTermsLower(page.get(page.size() - 1).getTerm());
+            q.setTermsLowerInclusive(false);
+        }
+
+        final Snapshot loaded = new Snapshot(generation, terms, frequencies);
+        logger.log(Level.INFO, "Loaded terms dictionary, terms: " + terms.size()
+                + ", grams: " + loaded.index.size() + ", time ms: " + (System.currentTimeMillis() - start));
+        return loaded;
+    }
+
+    /**
+     * Get the literal fragments every string fully matching the expression
+     * must contain. Only the parts of the expression outside of groups,
+     * character classes and optional elements are used. Fragments shorter
+     * than the index gram size are not returned.
+     *
+     * @param regex the regular expression
+     * @return lower case fragments, or null if the expression can't be
+     * analyzed, e.g. because of top level alternation
+     */
+    static List<String> getLiteralFragments(String regex) {
+        List<String> fragments = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        final int length = regex.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = regex.charAt(i);
+            if (depth > 0) {
+                //group contents may be optional or alternatives, skip them
+                if (c == '\\') {
+                    if (i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                        return null;
+                    }
+                    ++i;
+                } else if (c == '[') {
+                    i = skipCharacterClass(regex, i);
+                    if (i == -1) {
+                        return null;
+                    }
+                } else if (c == '(') {
+                    ++depth;
+                } else if (c == ')') {
+                    --depth;
+                }
+                continue;
+            }
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= length) {
+                        return null;
+                    }
+                    final char escaped = regex.charAt(++i);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 1);
+                        if (end == -1) {
+                            end = length;
+                        }
+                        current.append(regex, i + 1, end);
+                        i = end + 1;
+                    } else if (!Character.isLetterOrDigit(escaped)) {
+                        current.append(escaped);
+                    } else if ("dDwWsSbB".indexOf(escaped) != -1) {
+                        addFragment(fragments, current);
+                    } else {
+                        //other escapes, e.g. \\x or \\p, are not analyzed
+                        return null;
+                    }
+                    break;
+                case '|':
+                    return null;
+                case '(':
+                    //inline flags, e.g. (?x), change how the rest is matched
+                    if (i + 2 < length && regex.charAt(i + 1) == '?'
+                            && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        return null;
+                    }
+                    addFragment(fragments, current);
+                    ++depth;
+                    break;
+                case ')':
+                    return null;
+                case '[':
+                    addFragment(fragments, current);
+                    i = skipCharacterClass(regex, i);
+                    if (i == -1) {
+                        return null;
+                    }
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    //the preceding element is optional
+                    if (current.length() > 0) {
+                        current.setLength(current.length() - 1);
+                    }
+                    addFragment(fragments, current);
+                    if (c == '{') {
+                        i = regex.indexOf('}', i);
+                        if (i == -1) {
+                            return null;
+                        }
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    addFragment(fragments, current);
+                    break;
+                default:
+                    current.append(c);
+            }
+        }
+        if (depth != 0) {
+            return null;
+        }
+        addFragment(fragments, current);
+        return fragments;
+    }
+
+    private static void addFragment(List<String> fragments, StringBuilder current) {
+        if (current.length() >= GRAM_SIZE) {
+            fragments.add(toLowerCase(current));
+        }
+        current.setLength(0);
+    }
+
+    /**
+     * @return index of the closing bracket of the class starting at start, or
+     * -1 if not found or nested
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            ++i;
+        }
+        //a leading bracket is a literal
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            ++i;
+        }
+        for (; i < regex.length(); ++i) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toLowerCase(CharSequence s) {
+        final int length = s.length();
+        char[] lower = new char[length];
+        for (int i = 0; i < length; ++i) {
+            lower[i] = Character.toLowerCase(s.charAt(i));
+        }
+        return new String(lower);
+    }
+
+    private static long gram(CharSequence s, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM_SIZE; ++i) {
+            gram = (gram << 16) | s.charAt(offset + i);
+        }
+        return gram;
+    }
+
+    /**
+     * Terms of a single index generation, with the trigram index. Terms are
+     * kept in index order, posting lists hold term indexes in ascending order.
+     */
+    private static class Snapshot {
+
+        private final long generation;
+        private final String[] terms;
+        private final long[] frequencies;
+        private final Map<Long, int[]> index;
+        private static final int[] NO_TERMS = new int[0];
+
+        Snapshot(long generation, List<String> termsList, List<Long> frequenciesList) {
+            this.generation = generation;
+            final int numTerms = termsList.size();
+            terms = termsList.toArray(new String[numTerms]);
+            frequencies = new long[numTerms];
+            for (int i = 0; i < numTerms; ++i) {
+                frequencies[i] = frequenciesList.get(i);
+            }
+
+            //build posting lists in growable arrays, first element is the size
+            Map<Long, int[]> postings = new HashMap<Long, int[]>();
+            for (int t = 0; t < numTerms; ++t) {
+                final String lower = toLowerCase(terms[t]);
+                for (int i = 0; i + GRAM_SIZE <= lower.length(); ++i) {
+                    final Long key = gram(lower, i);
+                    int[] list = postings.get(key);
+                    if (list == null) {
+                        list = new int[4];
+                        postings.put(key, list);
+                    }
+                    final int size = list[0];
+                    //a gram repeated in the same term is indexed once
+                    if (size > 0 && list[size] == t) {
+                        continue;
+                    }
+                    if (size + 1 == list.length) {
+                        list = Arrays.copyOf(list, list.length * 2);
+                        postings.put(key, list);
+                    }
+                    list[size + 1] = t;
+                    list[0] = size + 1;
+                }
+            }
+            for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+                final int[] list = entry.getValue();
+                entry.setValue(Arrays.copyOfRange(list, 1, list[0] + 1));
+            }
+            index = postings;
+        }
+
+        /**
+         * Get the indexes of the terms containing all grams of all fragments
+         */
+        int[] getCandidates(List<String> fragments) {
+            List<int[]> lists = new ArrayList<int[]>();
+            for (String fragment : fragments) {
+                for (int i = 0; i + GRAM_SIZE <= fragment.length(); ++i) {
+                    final int[] list = index.get(gram(fragment, i));
+                    if (list == null) {
+                        return NO_TERMS;
+                    }
+                    lists.add(list);
+                }
+            }
+
+            //intersect, starting with the shortest list
+            int[] result = lists.get(0);
+            for (int[] list : lists) {
+                if (list.length < result.length) {
+                    result = list;
+                }
+            }
+            for (int[] list : lists) {
+                if (list != result) {
+                    result = intersect(result, list);
+                    if (result.length == 0) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    ++i;
+                } else if (a[i] > b[j]) {
+                    ++j;
+                } else {
+                    result[size++] = a[i];
+                    ++i;
+                    ++j;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+}
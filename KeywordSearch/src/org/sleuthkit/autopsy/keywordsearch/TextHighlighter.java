@@ -0,0 +1,192 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2011 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Highlights the hits of a highlight query in extracted text read from the
+ * text store, in place of the Solr highlighter, which needs the text stored
+ * in the index.
+ *
+ * Supports the highlight queries built for the Solr highlighter: an escaped
+ * literal query, or quoted terms, optionally prefixed with the field. A
+ * literal term is matched as a phrase of its words, case insensitively, with
+ * any non-word chars between the words and on word boundaries, to approximate
+ * the phrase query on the tokenized content field. A term matched by a regex
+ * query is a token of the whitespace tokenized content_ws field, and is matched
+ * as a whole whitespace delimited token, case sensitively.
+ */
+final class TextHighlighter {
+
+    private static final String WORD_CHAR = "[\\p{L}\\p{N}]";
+    private static final String NON_WORD_CHARS = "[^\\p{L}\\p{N}]+";
+    private final Pattern hitPattern;
+
+    /**
+     * @param highlightQuery highlight query, with Lucene special chars escaped
+     * @param isRegex whether the terms of the query are the terms matched by a
+     * regex query, to match as whole whitespace delimited tokens
+     */
+    TextHighlighter(String highlightQuery, boolean isRegex) {
+        this.hitPattern = isRegex ? buildTokenPattern(getTerms(highlightQuery)) : buildPattern(getTerms(highlightQuery));
+    }
+
+    /**
+     * Find the hits in the text
+     *
+     * @param text text to search
+     * @return start and end offsets of the hits, in text order, empty if none
+     */
+    List<int[]> findHits(String text) {
+        List<int[]> hits = new ArrayList<int[]>();
+        if (hitPattern == null || text == null) {
+            return hits;
+        }
+        final Matcher m = hitPattern.matcher(text);
+        while (m.find()) {
+            hits.add(new int[]{m.start(), m.end()});
+        }
+        return hits;
+    }
+
+    /**
+     * Make the preview of the first hit in the text, like the Solr highlighter
+     * snippet
+     *
+     * @param text text to search
+     * @return the snippet with the hit marked, or empty string if no hit
+     */
+    String getSnippet(String text) {
+        if (hitPattern == null || text == null) {
+            return "";
+        }
+        final Matcher m = hitPattern.matcher(text);
+        if (!m.find()) {
+            return "";
+        }
+        return ChunkKeywordMatcher.makeSnippet(text, m.start(), m.end());
+    }
+
+    /**
+     * Get the unescaped terms of the highlight query: the quoted terms, or
+     * the whole query if none is quoted
+     */
+    static List<String> getTerms(String highlightQuery) {
+        List<String> terms = new ArrayList<String>();
+        String query = highlightQuery.trim();
+        final String fieldPrefix = LuceneQuery.HIGHLIGHT_FIELD_REGEX + ":";
+        if (query.indexOf('"') < 0) {
+            if (query.startsWith(fieldPrefix)) {
+                query = query.substring(fieldPrefix.length());
+            }
+            addTerm(terms, new StringBuilder(query.length()), query, 0, query.length());
+            return terms;
+        }
+
+        StringBuilder term = new StringBuilder();
+        boolean inQuotes = false;
+        int termStart = 0;
+        for (int i = 0; i < query.length(); ++i) {
+            final char c = query.charAt(i);
+            if (c == '\\') {
+                //skip escaped char
+                ++i;
+            } else if (c == '"') {
+                if (inQuotes) {
+                    addTerm(terms, term, query, termStart, i);
+                } else {
+                    termStart = i + 1;
+                }
+                inQuotes = !inQuotes;
+            }
+        }
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, StringBuilder term, String query, int start, int end) {
+        term.setLength(0);
+        for (int i = start; i < end; ++i) {
+            char c = query.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                c = query.charAt(++i);
+            }
+            term.append(c);
+        }
+        final String termStr = term.toString().trim();
+        if (!termStr.isEmpty()) {
+            terms.add(termStr);
+        }
+    }
+
+    /**
+     * Build the alternation of the term patterns, or null if no terms
+     */
+    private static Pattern buildPattern(List<String> terms) {
+        StringBuilder sb = new StringBuilder();
+        for (String term : terms) {
+            final String[] words = term.split(NON_WORD_CHARS);
+            StringBuilder termPattern = new StringBuilder();
+            for (String word : words) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                if (termPattern.length() > 0) {
+                    termPattern.append(NON_WORD_CHARS);
+                }
+                termPattern.append(Pattern.quote(word));
+            }
+            if (termPattern.length() == 0) {
+                //no words, match the term as is
+                termPattern.append(Pattern.quote(term));
+            } else {
+                termPattern.insert(0, "(?<!" + WORD_CHAR + ")").append("(?!" + WORD_CHAR + ")");
+            }
+            if (sb.length() > 0) {
+                sb.append("|");
+            }
+            sb.append("(?:").append(termPattern).append(")");
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    /**
+     * Build the alternation of the whole token patterns of the terms, or null
+     * if no terms
+     */
+    private static Pattern buildTokenPattern(List<String> terms) {
+        StringBuilder sb = new StringBuilder();
+        for (String term : terms) {
+            if (sb.length() > 0) {
+                sb.append("|");
+            }
+            sb.append(Pattern.quote(term));
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        return Pattern.compile("(?<!\\S)(?:" + sb.toString() + ")(?!\\S)");
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+
+/**
+ * Tika text extraction worker, run in a separate JVM by TikaWorkerPool, so
+ * that a parser hang or memory blowup on a malformed document does not affect
+ * Autopsy. Documents are parsed one at a time, with the same warm parser.
+ *
+ * Protocol, over stdin / stdout:
+ *
+ * on start: READY, once the parser is loaded
+ *
+ * request: the document content as frames (int length, bytes),
+ * terminated by a frame of length 0
+ *
+ * response: TEXT frames (int length, UTF-8 bytes) as text is extracted, then
+ * META frames (key and value, each as int length, UTF-8 bytes), then END, or
+ * ERROR with the message if the parse failed
+ *
+ * Output printed by parsers is sent to stderr. The worker exits when stdin is
+ * closed. Only depends on the JDK and Tika, as
+ * it does not run inside the platform.
+ */
+public class TikaWorker {
+
+    static final byte READY = 'R';
+    static final byte TEXT = 'T';
+    static final byte META = 'M';
+    static final byte END = 'E';
+    static final byte ERROR = 'X';
+    static final int MAX_FRAME_SIZE = 64 * 1024;
+    static final Charset FRAME_CHARSET = Charset.forName("UTF-8");
+    //text chars buffered before sent as a frame
+    private static final int TEXT_FRAME_CHARS = 8 * 1024;
+
+    private TikaWorker() {
+    }
+
+    public static void main(String[] args) {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in, MAX_FRAME_SIZE));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out, MAX_FRAME_SIZE));
+        //stdout only carries frames, anything parsers print goes to stderr, logged by Autopsy
+        System.setOut(System.err);
+        //parser stays warm between documents
+        final AutoDetectParser parser = new AutoDetectParser();
+
+        try {
+            out.writeByte(READY);
+            out.flush();
+            while (true) {
+                final DocumentInputStream document = new DocumentInputStream(in);
+                if (!document.hasContent()) {
+                    //stdin closed, Autopsy is done with this worker
+                    return;
+                }
+                final Metadata meta = new Metadata();
+                final ParseContext context = new ParseContext();
+                context.set(Parser.class, parser);
+                String error = null;
+                try {
+                    final TextFrameWriter writer = new TextFrameWriter(out);
+                    parser.parse(document, new BodyContentHandler(writer), meta, context);
+                    writer.flush();
+                } catch (OutOfMemoryError e) {
+                    //let Autopsy start a fresh worker
+                    System.exit(2);
+                } catch (Throwable e) {
+                    error = e.toString();
+                }
+                //skip content the parser did not read, to be ready for the next document
+                document.skipToEnd();
+
+                if (error == null) {
+                    List<String> keys = Arrays.asList(meta.names());
+                    Collections.sort(keys);
+                    for (String key : keys) {
+                        out.writeByte(META);
+                        writeString(out, key);
+                        writeString(out, meta.get(key));
+                    }
+                    out.writeByte(END);
+                } else {
+                    out.writeByte(ERROR);
+                    writeString(out, error);
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            //Autopsy closed the streams or the worker was killed
+        }
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = (s == null ? "" : s).getBytes(FRAME_CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("Invalid Tika worker frame length: " + len);
+        }
+        final byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, FRAME_CHARSET);
+    }
+
+    /**
+     * Stream of the document content read from the frames on stdin
+     */
+    private static class DocumentInputStream extends InputStream {
+
+        private final DataInputStream in;
+        private final byte[] frame = new byte[MAX_FRAME_SIZE];
+        private int frameLen = 0;
+        private int framePos = 0;
+        private boolean eof = false;
+
+        DocumentInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return false if stdin was closed before a new document started
+         */
+        boolean hasContent() throws IOException {
+            try {
+                nextFrame();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return frame[framePos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int n = Math.min(len, frameLen - framePos);
+            System.arraycopy(frame, framePos, b, off, n);
+            framePos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            //the frames of the next document follow, nothing to close
+        }
+
+        void skipToEnd() throws IOException {
+            while (fill()) {
+                framePos = frameLen;
+            }
+        }
+
+        private boolean fill() throws IOException {
+            while (!eof && framePos == frameLen) {
+                nextFrame();
+            }
+            return !eof;
+        }
+
+        private void nextFrame() throws IOException {
+            final int len = in.readInt();
+            if (len < 0 || len > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid document frame length: " + len);
+            }
+            in.readFully(frame, 0, len);
+            frameLen = len;
+            framePos = 0;
+            eof = len == 0;
+        }
+    }
+
+    /**
+     * Writer sending the extracted text as TEXT frames
+     */
+    private static class TextFrameWriter extends Writer {
+
+        private final DataOutputStream out;
+        private final StringBuilder buf = new StringBuilder(TEXT_FRAME_CHARS);
+
+        TextFrameWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            buf.append(cbuf, off, len);
+            if (buf.length() >= TEXT_FRAME_CHARS) {
+                sendFrame();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buf.length() > 0) {
+                sendFrame();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void sendFrame() throws IOException {
+            out.writeByte(TEXT);
+            writeString(out, buf.toString());
+            buf.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Pool of local Tika worker JVMs (TikaWorker), parsing documents out of
+ * process. Each worker has its own memory limit and keeps its parser warm
+ * between documents. A worker that spends longer than the timeout parsing a
+ * document is killed, and a new one is started when needed. Only the time the
+ * reader waits for the worker counts, not the time the text is indexed in.
+ *
+ * If no worker can be started, the pool is disabled for the session and
+ * callers parse in process.
+ */
+class TikaWorkerPool {
+
+    private static final Logger logger = Logger.getLogger(TikaWorkerPool.class.getName());
+    private static final int NUM_WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int MAX_WORKER_MEM_MB = 512;
+    //documents parsed by a worker before it is replaced, to contain parser leaks
+    private static final int MAX_WORKER_DOCUMENTS = 1000;
+    //how long to wait for a busy worker before checking if one can be started
+    private static final int ACQUIRE_WAIT_SECS = 1;
+    private static TikaWorkerPool instance;
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<Worker>();
+    //idle and busy workers
+    private int numWorkers = 0;
+    private volatile boolean disabled = false;
+    private List<String> workerCommand = null;
+    private final ExecutorService feedExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("Tika worker feed"));
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Tika worker watchdog"));
+
+    private TikaWorkerPool() {
+    }
+
+    static synchronized TikaWorkerPool getDefault() {
+        if (instance == null) {
+            instance = new TikaWorkerPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Parse the document in a worker process
+     *
+     * @param stream document content, read by a background thread
+     * @param meta metadata, filled in by the time the reader is at its end
+     * @param timeoutSecs parse time after which the worker is killed, if it has
+     * not finished the document
+     * @param sourceFile file of the document, for logging
+     * @return reader of the extracted text, or null if no worker can be used,
+     * in which case the document should be parsed in process
+     */
+    Reader parse(InputStream stream, Metadata meta, long timeoutSecs, AbstractFile sourceFile) {
+        if (disabled) {
+            return null;
+        }
+        final Worker worker;
+        try {
+            worker = acquire();
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted waiting for a Tika worker");
+            return null;
+        }
+        if (worker == null) {
+            return null;
+        }
+        worker.startDocument(stream, timeoutSecs, sourceFile);
+        return new WorkerReader(worker, meta);
+    }
+
+    /**
+     * Stop the idle workers, e.g. when the application closes. Busy workers
+     * exit when their streams are closed.
+     */
+    void shutdown() {
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.kill();
+            synchronized (this) {
+                --numWorkers;
+            }
+        }
+    }
+
+    private Worker acquire() throws InterruptedException {
+        while (true) {
+            Worker worker = idleWorkers.poll();
+            if (worker != null) {
+                return worker;
+            }
+            synchronized (this) {
+                if (numWorkers < NUM_WORKERS) {
+                    worker = startWorker();
+                    if (worker != null) {
+                        ++numWorkers;
+                        return worker;
+                    } else if (numWorkers == 0) {
+                        logger.log(Level.WARNING, "Could not start a Tika worker, parsing in process");
+                        disabled = true;
+                        return null;
+                    }
+                }
+            }
+            worker = idleWorkers.poll(ACQUIRE_WAIT_SECS, TimeUnit.SECONDS);
+            if (worker != null) {
+                return worker;
+            }
+        }
+    }
+
+    private void release(Worker worker) {
+        if (worker.isUsable()) {
+            idleWorkers.add(worker);
+        } else {
+            worker.kill();
+            synchronized (this) {
+                --numWorkers;
+            }
+        }
+    }
+
+    /**
+     * Start a worker process and wait for it to be ready
+     *
+     * @return the worker, or null if it could not be started
+     */
+    private Worker startWorker() {
+        try {
+            if (workerCommand == null) {
+                workerCommand = createWorkerCommand();
+            }
+            final Process process = new ProcessBuilder(workerCommand).start();
+            final Worker worker = new Worker(process);
+            if (!worker.waitReady()) {
+                worker.kill();
+                return null;
+            }
+            return worker;
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not start Tika worker process", ex);
+            return null;
+        }
+    }
+
+    private static List<String> createWorkerCommand() throws Exception {
+        //the module jar and the jars of Tika and its dependencies
+        final File moduleJar = new File(TikaWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final File tikaJar = new File(Tika.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final String classPath = moduleJar.getAbsolutePath() + File.pathSeparator
+                + tikaJar.getParentFile().getAbsolutePath() + File.separator + "*";
+
+        List<String> command = new ArrayList<String>();
+        command.add(PlatformUtil.getJavaPath());
+        command.add("-Xmx" + MAX_WORKER_MEM_MB + "m");
+        command.add("-cp");
+        command.add(classPath);
+        command.add(TikaWorker.class.getName());
+        logger.log(Level.INFO, "Tika worker command: " + command);
+        return command;
+    }
+
+    /**
+     * A worker process and its streams
+     */
+    private class Worker {
+
+        private final Process process;
+        private final DataOutputStream toWorker;
+        private final DataInputStream fromWorker;
+        private int numDocuments = 0;
+        private volatile boolean killed = false;
+        private Future<?> feedTask;
+        private ScheduledFuture<?> timeoutTask;
+        //parse time left for the document, only counted while the reader waits for the worker
+        private long parseTimeLeftMillis;
+        private long waitStartMillis;
+        private AbstractFile sourceFile;
+
+        Worker(Process process) {
+            this.process = process;
+            this.toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), TikaWorker.MAX_FRAME_SIZE));
+            this.fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream(), TikaWorker.MAX_FRAME_SIZE));
+            drainErrors(process.getErrorStream());
+        }
+
+        boolean waitReady() {
+            try {
+                return fromWorker.readByte() == TikaWorker.READY;
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Tika worker process ended on start");
+                return false;
+            }
+        }
+
+        boolean isUsable() {
+            return !killed && numDocuments < MAX_WORKER_DOCUMENTS;
+        }
+
+        void kill() {
+            killed = true;
+            process.destroy();
+        }
+
+        /**
+         * Send the document content to the worker in the background. The
+         * worker is killed if the reader waits for it longer than the timeout
+         * in total, see resumeTimeout()
+         */
+        void startDocument(final InputStream stream, long timeoutSecs, final AbstractFile sourceFile) {
+            ++numDocuments;
+            this.sourceFile = sourceFile;
+            parseTimeLeftMillis = timeoutSecs * 1000;
+            timeoutTask = null;
+
+            feedTask = feedExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final byte[] buf = new byte[TikaWorker.MAX_FRAME_SIZE];
+                    try {
+                        int read;
+                        while (true) {
+                            try {
+                                read = stream.read(buf);
+                            } catch (IOException ex) {
+                                //parse what was read
+                                logger.log(Level.WARNING, "Error reading content for Tika worker: " + sourceFile.getId() + ", " + sourceFile.getName(), ex);
+                                break;
+                            }
+                            if (read == -1) {
+                                break;
+                            }
+                            if (read > 0) {
+                                toWorker.writeInt(read);
+                                toWorker.write(buf, 0, read);
+                            }
+                        }
+                        toWorker.writeInt(0);
+                        toWorker.flush();
+                    } catch (IOException ex) {
+                        if (!killed) {
+                            logger.log(Level.WARNING, "Error sending content to Tika worker", ex);
+                            kill();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Start counting the parse time, while the reader waits for the next
+         * frame. The worker blocks writing its text while the reader indexes
+         * the text read before, that time is not counted.
+         */
+        void resumeTimeout() {
+            waitStartMillis = System.currentTimeMillis();
+            timeoutTask = watchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    final String msg = "Tika worker parse timeout for content: " + sourceFile.getId() + ", " + sourceFile.getName();
+                    KeywordSearch.getTikaLogger().log(Level.WARNING, msg);
+                    logger.log(Level.WARNING, msg);
+                    kill();
+                }
+            }, Math.max(0, parseTimeLeftMillis), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Stop counting the parse time, once a frame was read
+         */
+        void pauseTimeout() {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+                parseTimeLeftMillis -= System.currentTimeMillis() - waitStartMillis;
+            }
+        }
+
+        /**
+         * Finish the document, after the worker has sent all of its results,
+         * or has to be killed
+         */
+        void endDocument(boolean completed) {
+            pauseTimeout();
+            if (!completed) {
+                kill();
+            }
+            try {
+                //the worker reads all content before it completes, so the feed is done or failing
+                feedTask.get();
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Error waiting for Tika worker content feed", ex);
+                kill();
+            }
+            release(this);
+        }
+
+        private void drainErrors(final InputStream errors) {
+            feedExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    BufferedReader br = new BufferedReader(new InputStreamReader(errors));
+                    try {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            KeywordSearch.getTikaLogger().log(Level.INFO, "Tika worker: " + line);
+                        }
+                    } catch (IOException ex) {
+                        //worker ended
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Reader of the text sent by the worker for the current document
+     */
+    private static class WorkerReader extends Reader {
+
+        private final Worker worker;
+        private final Metadata meta;
+        private char[] text = new char[0];
+        private int textPos = 0;
+        private boolean done = false;
+
+        WorkerReader(Worker worker, Metadata meta) {
+            this.worker = worker;
+            this.meta = meta;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (textPos == text.length) {
+                if (done) {
+                    return -1;
+                }
+                nextFrame();
+            }
+            final int n = Math.min(len, text.length - textPos);
+            System.arraycopy(text, textPos, cbuf, off, n);
+            textPos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                //the worker is still sending results, start over with a fresh worker
+                done = true;
+                worker.endDocument(false);
+            }
+        }
+
+        private void nextFrame() throws IOException {
+            final DataInputStream in = worker.fromWorker;
+            //the parse timeout only runs while waiting for the worker,
+            //it is stopped before the worker is released at the end of the document
+            worker.resumeTimeout();
+            try {
+                final byte type = in.readByte();
+                switch (type) {
+                    case TikaWorker.TEXT:
+                        text = TikaWorker.readString(in).toCharArray();
+                        textPos = 0;
+                        worker.pauseTimeout();
+                        break;
+                    case TikaWorker.META:
+                        final String key = TikaWorker.readString(in);
+                        meta.add(key, TikaWorker.readString(in));
+                        worker.pauseTimeout();
+                        break;
+                    case TikaWorker.END:
+                        done = true;
+                        worker.endDocument(true);
+                        break;
+                    case TikaWorker.ERROR:
+                        final String error = TikaWorker.readString(in);
+                        done = true;
+                        worker.endDocument(true);
+                        throw new IOException("Tika worker could not parse the content: " + error);
+                    default:
+                        throw new IOException("Unexpected Tika worker frame: " + type);
+                }
+            } catch (EOFException ex) {
+                done = true;
+                final boolean killed = worker.killed;
+                worker.endDocument(false);
+                throw new IOException(killed ? "Tika worker killed on timeout" : "Tika worker process ended", ex);
+            } catch (IOException ex) {
+                if (!done) {
+                    done = true;
+                    worker.endDocument(false);
+                }
+                throw ex;
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Block classifier for string extraction from unallocated space. Blocks filled
+ * with a single non-printable byte (e.g. zeroed space) and high entropy blocks
+ * (compressed or encrypted data) cannot yield meaningful strings, and are
+ * removed from the read buffer before it is scanned for strings.
+ *
+ * The skipped ranges are recorded and logged when the file is done, so that
+ * the decision can be audited.
+ */
+class UnallocBlockFilter {
+
+    static final int BLOCK_SIZE = 4096;
+    //entropy in bits per byte, above which a block is taken as compressed or encrypted data
+    //text, even mixed with binary data, stays well below it
+    private static final double MAX_ENTROPY = 7.5;
+    //zero bytes put in place of skipped blocks, to break strings at any UTF-16 alignment
+    private static final int SEPARATOR_LEN = 4;
+    //skipped ranges listed in the log, the rest are only counted
+    private static final int MAX_LOGGED_RANGES = 100;
+    //count * log2(count), by count of a byte value in a block
+    private static final double[] COUNT_LOG = new double[BLOCK_SIZE + 1];
+    private static final double BLOCK_SIZE_LOG = Math.log(BLOCK_SIZE) / Math.log(2);
+    private static final Logger logger = Logger.getLogger(UnallocBlockFilter.class.getName());
+    private final AbstractFile file;
+    private final int[] histogram = new int[256];
+    //skipped blocks, by type
+    private long fillBytes = 0;
+    private long entropyBytes = 0;
+    //current skipped range, merged with following skipped blocks of the same type
+    private long rangeStart = -1;
+    private long rangeEnd = -1;
+    private BlockType rangeType;
+    private int numRanges = 0;
+    private final StringBuilder loggedRanges = new StringBuilder();
+
+    static {
+        final double log2 = Math.log(2);
+        for (int i = 1; i <= BLOCK_SIZE; ++i) {
+            COUNT_LOG[i] = i * Math.log(i) / log2;
+        }
+    }
+
+    private enum BlockType {
+
+        DATA, FILL, HIGH_ENTROPY
+    }
+
+    UnallocBlockFilter(AbstractFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Check if the file is unallocated space, where the blocks are filtered
+     *
+     * @param file file to extract strings from
+     * @return true if the file is unallocated or unused blocks
+     */
+    static boolean isSupported(AbstractFile file) {
+        final TskData.TSK_DB_FILES_TYPE_ENUM type = file.getType();
+        return type.equals(TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS)
+                || type.equals(TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS);
+    }
+
+    /**
+     * Remove the blocks that cannot yield strings from the buffer, in place.
+     * Blocks are aligned to the file offset of the buffer, the last partial
+     * block is always kept. A run of skipped blocks is replaced with a few
+     * zero bytes, so that strings around it are not joined.
+     *
+     * @param buf buffer read from the file
+     * @param len number of bytes read in the buffer
+     * @param fileOffset offset in the file the buffer was read from, block
+     * aligned
+     * @return number of bytes left in the buffer to scan for strings
+     */
+    int filter(byte[] buf, int len, long fileOffset) {
+        int outLen = 0;
+        boolean prevSkipped = false;
+        for (int blockStart = 0; blockStart < len; blockStart += BLOCK_SIZE) {
+            final int blockLen = Math.min(BLOCK_SIZE, len - blockStart);
+            final BlockType type = blockLen == BLOCK_SIZE ? classify(buf, blockStart) : BlockType.DATA;
+            if (type == BlockType.DATA) {
+                if (outLen != blockStart) {
+                    System.arraycopy(buf, blockStart, buf, outLen, blockLen);
+                }
+                outLen += blockLen;
+                prevSkipped = false;
+            } else {
+                if (!prevSkipped) {
+                    for (int i = 0; i < SEPARATOR_LEN; ++i) {
+                        buf[outLen++] = 0;
+                    }
+                }
+                prevSkipped = true;
+                recordSkipped(fileOffset + blockStart, type);
+            }
+        }
+        return outLen;
+    }
+
+    /**
+     * Log the ranges skipped in the file, if any
+     */
+    void logSkipped() {
+        endRange();
+        if (fillBytes == 0 && entropyBytes == 0) {
+            return;
+        }
+        StringBuilder msg = new StringBuilder();
+        msg.append("Skipped ").append(fillBytes + entropyBytes).append(" of ").append(file.getSize())
+                .append(" bytes of unallocated file: ").append(file.getName())
+                .append(" (id: ").append(file.getId()).append(") in string extraction, ")
+                .append(fillBytes).append(" bytes of fill blocks, ")
+                .append(entropyBytes).append(" bytes of high entropy blocks, in ")
+                .append(numRanges).append(" ranges: ").append(loggedRanges);
+        if (numRanges > MAX_LOGGED_RANGES) {
+            msg.append(" ...");
+        }
+        logger.log(Level.INFO, msg.toString());
+    }
+
+    private BlockType classify(byte[] buf, int off) {
+        final int[] hist = histogram;
+        for (int i = 0; i < 256; ++i) {
+            hist[i] = 0;
+        }
+        final int end = off + BLOCK_SIZE;
+        for (int i = off; i < end; ++i) {
+            ++hist[buf[i] & 0xFF];
+        }
+
+        final int first = buf[off] & 0xFF;
+        if (hist[first] == BLOCK_SIZE) {
+            //a block of the same printable char is still a string
+            return StringExtract.isPrintableAscii((char) buf[off]) ? BlockType.DATA : BlockType.FILL;
+        }
+
+        //Shannon entropy: log2(N) - sum(c * log2(c)) / N
+        double sum = 0;
+        for (int i = 0; i < 256; ++i) {
+            sum += COUNT_LOG[hist[i]];
+        }
+        final double entropy = BLOCK_SIZE_LOG - sum / BLOCK_SIZE;
+        return entropy > MAX_ENTROPY ? BlockType.HIGH_ENTROPY : BlockType.DATA;
+    }
+
+    private void recordSkipped(long blockOffset, BlockType type) {
+        if (type == BlockType.FILL) {
+            fillBytes += BLOCK_SIZE;
+        } else {
+            entropyBytes += BLOCK_SIZE;
+        }
+        if (blockOffset == rangeEnd && type == rangeType) {
+            rangeEnd += BLOCK_SIZE;
+            return;
+        }
+        endRange();
+        rangeStart = blockOffset;
+        rangeEnd = blockOffset + BLOCK_SIZE;
+        rangeType = type;
+    }
+
+    private void endRange() {
+        if (rangeStart == -1) {
+            return;
+        }
+        ++numRanges;
+        if (numRanges <= MAX_LOGGED_RANGES) {
+            if (loggedRanges.length() > 0) {
+                loggedRanges.append(", ");
+            }
+            loggedRanges.append(rangeStart).append("-").append(rangeEnd).append(" ")
+                    .append(rangeType == BlockType.FILL ? "fill" : "high entropy");
+        }
+        rangeStart = -1;
+        rangeEnd = -1;
+    }
+}